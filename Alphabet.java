@@ -1,9 +1,22 @@
 package enigma;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static enigma.EnigmaException.*;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Characters are Unicode code
+ *  points, so an alphabet may hold characters outside the Basic
+ *  Multilingual Plane (those that take two chars in a String); the
+ *  methods that deal in chars apply only to alphabets that do not
+ *  (see bmp()).
+ *
+ *  Code points are indexed by a table covering the range from the least
+ *  to the greatest when that range is not too sparse, and otherwise by a
+ *  perfect hash (hash and displace): a first hash picks a bucket, whose
+ *  displacement selects a second hash that sends each code point of the
+ *  alphabet to a slot of its own, so that a lookup never probes.
  *  @author Manav
  */
 class Alphabet {
@@ -11,9 +24,38 @@ class Alphabet {
     /** A new alphabet containing CHARS.  Character number #k has index
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
-        _alphabet = new ArrayList<Character>();
-        for (char i : chars.toCharArray()) {
-            _alphabet.add(i);
+        _codePoints = chars.codePoints().toArray();
+        int n = _codePoints.length;
+        int min = Character.MAX_CODE_POINT, max = Character.MIN_CODE_POINT;
+        boolean bmp = true;
+        for (int c : _codePoints) {
+            min = Math.min(min, c);
+            max = Math.max(max, c);
+            bmp &= c < Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        }
+        if (bmp) {
+            _chars = chars.toCharArray();
+        }
+        int span = max - min + 1;
+        if (n == 0 || span <= DENSE_SPAN || span <= DENSE_FACTOR * n) {
+            _base = n == 0 ? 0 : min;
+            _dense = new int[n == 0 ? 0 : span];
+            Arrays.fill(_dense, -1);
+            for (int i = 0; i < n; i++) {
+                if (_dense[_codePoints[i] - _base] != -1) {
+                    throw error("Character %c repeated in alphabet",
+                                _codePoints[i]);
+                }
+                _dense[_codePoints[i] - _base] = i;
+            }
+        } else {
+            HashSet<Integer> seen = new HashSet<>();
+            for (int c : _codePoints) {
+                if (!seen.add(c)) {
+                    throw error("Character %c repeated in alphabet", c);
+                }
+            }
+            buildHash();
         }
     }
 
@@ -24,26 +66,194 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return _alphabet.size();
+        return _codePoints.length;
+    }
+
+    /** Return true iff every character of this alphabet is a single
+     *  char. */
+    boolean bmp() {
+        return _chars != null;
     }
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return _alphabet.contains(ch);
+        return toInt(ch) != -1;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size().  The alphabet must be bmp(). */
     char toChar(int index) {
-        return _alphabet.get(index);
+        if (_chars == null) {
+            throw error("alphabet has characters that are not chars");
+        }
+        return _chars[index];
     }
 
     /** Returns the index of character CH which must be in
-     *  the alphabet. This is the inverse of toChar(). */
+     *  the alphabet. This is the inverse of toChar(). Returns -1 if CH
+     *  is not in the alphabet. */
     int toInt(char ch) {
-        return _alphabet.indexOf(ch);
+        return toIndex(ch);
+    }
+
+    /** Return the code point of character number INDEX, where 0 <= INDEX
+     *  < size(). */
+    int toCodePoint(int index) {
+        return _codePoints[index];
+    }
+
+    /** Return the index of the character with code point CP, or -1 if it
+     *  is not in the alphabet.  This is the inverse of toCodePoint(). */
+    int toIndex(int cp) {
+        if (_dense != null) {
+            int k = cp - _base;
+            return k >= 0 && k < _dense.length ? _dense[k] : -1;
+        }
+        int slot = slot(cp, _displacements[bucket(cp)]);
+        return _keys[slot] == cp ? _values[slot] : -1;
     }
 
-    /** Store alphabet. */
-    private ArrayList<Character> _alphabet;
+    /** Build the perfect hash of my code points, doubling the table
+     *  until every bucket finds a displacement within the limit. */
+    private void buildHash() {
+        int n = _codePoints.length;
+        int buckets = Integer.highestOneBit(Math.max(n / BUCKET_LOAD, 1));
+        _bucketShift = Integer.SIZE - Integer.numberOfTrailingZeros(buckets);
+        int capacity = Integer.highestOneBit(n) * 2;
+        while (!fillHash(buckets, capacity)) {
+            capacity *= 2;
+        }
+    }
+
+    /** Try to fill a perfect hash of BUCKETS buckets and CAPACITY slots,
+     *  placing the largest buckets first.  Return false if some bucket
+     *  finds no displacement. */
+    private boolean fillHash(int buckets, int capacity) {
+        _displacements = new int[buckets];
+        _keys = new int[capacity];
+        _values = new int[capacity];
+        _mask = capacity - 1;
+        Arrays.fill(_keys, -1);
+        int n = _codePoints.length;
+        int[] count = new int[buckets + 1];
+        for (int c : _codePoints) {
+            count[bucket(c) + 1] += 1;
+        }
+        Integer[] order = new Integer[buckets];
+        for (int b = 0; b < buckets; b++) {
+            order[b] = b;
+        }
+        final int[] sizes = count.clone();
+        Arrays.sort(order, (x, y) -> sizes[y + 1] - sizes[x + 1]);
+        for (int b = 0; b < buckets; b++) {
+            count[b + 1] += count[b];
+        }
+        int[] members = new int[n];
+        int[] fill = Arrays.copyOf(count, buckets);
+        for (int i = 0; i < n; i++) {
+            members[fill[bucket(_codePoints[i])]++] = i;
+        }
+        int[] slots = new int[n];
+        for (int b : order) {
+            int from = count[b], to = count[b + 1];
+            if (from == to) {
+                continue;
+            }
+            int d = 0;
+            while (!place(members, from, to, d, slots)) {
+                d += 1;
+                if (d == MAX_DISPLACEMENT) {
+                    return false;
+                }
+            }
+            _displacements[b] = d;
+        }
+        return true;
+    }
+
+    /** Place the code points whose indices are MEMBERS[FROM .. TO-1]
+     *  with displacement D, using SLOTS as scratch, and return true, or
+     *  leave the table unchanged and return false if any collide. */
+    private boolean place(int[] members, int from, int to, int d,
+                          int[] slots) {
+        for (int k = from; k < to; k++) {
+            int slot = slot(_codePoints[members[k]], d);
+            if (_keys[slot] != -1) {
+                for (int j = from; j < k; j++) {
+                    _keys[slots[j]] = -1;
+                }
+                return false;
+            }
+            _keys[slot] = _codePoints[members[k]];
+            _values[slot] = members[k];
+            slots[k] = slot;
+        }
+        return true;
+    }
+
+    /** Return the bucket of the perfect hash of code point CP. */
+    private int bucket(int cp) {
+        return _bucketShift == Integer.SIZE ? 0 : mix(cp) >>> _bucketShift;
+    }
+
+    /** Return the slot of the perfect hash of code point CP under
+     *  displacement D. */
+    private int slot(int cp, int d) {
+        return mix(cp + d * DISPLACEMENT_STEP) & _mask;
+    }
+
+    /** Return a scrambling of X in which every bit depends on every bit of
+     *  X (the finalizer of MurmurHash3). */
+    private static int mix(int x) {
+        x ^= x >>> 16;
+        x *= 0x85ebca6b;
+        x ^= x >>> 13;
+        x *= 0xc2b2ae35;
+        return x ^ (x >>> 16);
+    }
+
+    /** Largest character span always indexed by a dense table. */
+    private static final int DENSE_SPAN = 4096;
+
+    /** Largest ratio of span to alphabet size otherwise indexed densely. */
+    private static final int DENSE_FACTOR = 8;
+
+    /** Mean number of code points per bucket of the perfect hash. */
+    private static final int BUCKET_LOAD = 2;
+
+    /** Number of displacements tried for a bucket before the table is
+     *  enlarged. */
+    private static final int MAX_DISPLACEMENT = 1 << 12;
+
+    /** Multiplier of a displacement in the second hash. */
+    private static final int DISPLACEMENT_STEP = 0x9e3779b9;
+
+    /** My code points, in index order. */
+    private final int[] _codePoints;
+
+    /** My characters, in index order, if they are all chars, and
+     *  otherwise null. */
+    private char[] _chars;
+
+    /** Smallest code point covered by _dense. */
+    private int _base;
+
+    /** Index of code point _base + k at position k, or -1, when the
+     *  alphabet is compact enough to be indexed densely. */
+    private int[] _dense;
+
+    /** Displacement of each bucket of the perfect hash. */
+    private int[] _displacements;
+
+    /** Shift that leaves the bits of a hash that choose its bucket. */
+    private int _bucketShift;
+
+    /** Code point in each slot of the perfect hash, or -1. */
+    private int[] _keys;
+
+    /** Index of the code point in each slot of _keys. */
+    private int[] _values;
+
+    /** Number of slots of the perfect hash, less one. */
+    private int _mask;
 }
@@ -13,4 +13,60 @@ public class AlphabetTest {
         assertEquals('O', A.toChar(A.toInt('O')));
     }
 
+    @Test
+    public void testMissing() {
+        Alphabet A = new Alphabet("BDF");
+        assertEquals(false, A.contains('C'));
+        assertEquals(-1, A.toInt('A'));
+        assertEquals(-1, A.toInt('Z'));
+        assertEquals(2, A.toInt('F'));
+    }
+
+    @Test
+    public void testWideRange() {
+        Alphabet A = new Alphabet("A\u4e00z\uffee0");
+        assertEquals(5, A.size());
+        for (int i = 0; i < A.size(); i += 1) {
+            assertEquals(i, A.toInt(A.toChar(i)));
+        }
+        assertEquals(false, A.contains('B'));
+        assertEquals(-1, A.toInt('\u4e01'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicate() {
+        new Alphabet("ABCA");
+    }
+
+    @Test
+    public void testSupplementary() {
+        Alphabet A = new Alphabet("A\ud83d\ude00B\ud800\udf48");
+        assertEquals(4, A.size());
+        assertEquals(false, A.bmp());
+        assertEquals(1, A.toIndex(0x1f600));
+        assertEquals(0x10348, A.toCodePoint(3));
+        assertEquals(2, A.toInt('B'));
+        assertEquals(-1, A.toIndex(0x1f601));
+    }
+
+    @Test
+    public void testSparseLarge() {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < 20000; i += 1) {
+            chars.appendCodePoint(0x20000 + 37 * i);
+        }
+        Alphabet A = new Alphabet(chars.toString());
+        assertEquals(20000, A.size());
+        for (int i = 0; i < A.size(); i += 1) {
+            assertEquals(i, A.toIndex(A.toCodePoint(i)));
+            assertEquals(-1, A.toIndex(A.toCodePoint(i) + 1));
+        }
+        assertEquals(-1, A.toIndex('A'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSparseDuplicate() {
+        new Alphabet("A\u4e00\ud83d\ude00B\ud83d\ude00");
+    }
+
 }
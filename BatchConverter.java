@@ -0,0 +1,113 @@
+package enigma;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static enigma.EnigmaException.*;
+
+/** Converts many independent messages at once, each with its own
+ *  machine.  Where the Vector API (module jdk.incubator.vector) is
+ *  available, messages are converted a vector lane each (see
+ *  VectorBatch); otherwise, or when the machines differ in shape or are
+ *  not distinct, each is converted in turn by its machine.  Either way
+ *  the results, and the machines' final settings, are exactly those of
+ *  converting each message with its own machine.
+ *  @author Manavjot Singh
+ */
+class BatchConverter {
+
+    /** A converter that uses the Vector API if it is available. */
+    BatchConverter() {
+        this(true);
+    }
+
+    /** A converter that uses the Vector API iff VECTOR and it is
+     *  available. */
+    BatchConverter(boolean vector) {
+        _vector = vector && LANES > 1;
+    }
+
+    /** Return true iff the Vector API is available. */
+    static boolean vectorAvailable() {
+        return LANES > 1;
+    }
+
+    /** Return true iff I convert with the Vector API where I can. */
+    boolean vectorized() {
+        return _vector;
+    }
+
+    /** Return the conversion of each of MESSAGES by the corresponding
+     *  machine of MACHINES, as for MACHINES[k].convert(MESSAGES[k]),
+     *  leaving each machine advanced past its message.  No machine is
+     *  advanced if some message has a character not in the alphabet of
+     *  its machine. */
+    String[] convert(Machine[] machines, String[] messages) {
+        if (machines.length != messages.length) {
+            throw error("need one machine per message");
+        }
+        int[][] indices = new int[messages.length][];
+        for (int k = 0; k < messages.length; k++) {
+            indices[k] = Machine.indices(machines[k].alphabet(),
+                                         messages[k]);
+        }
+        if (_vector && uniform(machines)) {
+            new VectorBatch(machines, indices).run();
+        } else {
+            for (int k = 0; k < machines.length; k++) {
+                int[] message = indices[k];
+                for (int i = 0; i < message.length; i++) {
+                    message[i] = machines[k].convert(message[i]);
+                }
+            }
+        }
+        String[] result = new String[messages.length];
+        for (int k = 0; k < messages.length; k++) {
+            Alphabet alphabet = machines[k].alphabet();
+            char[] out = new char[indices[k].length];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = alphabet.toChar(indices[k][i]);
+            }
+            result[k] = new String(out);
+        }
+        return result;
+    }
+
+    /** Return true iff MACHINES are distinct, have the same numbers of
+     *  slots and pawls and the same alphabet size, and number at least
+     *  two. */
+    private static boolean uniform(Machine[] machines) {
+        if (machines.length < 2) {
+            return false;
+        }
+        Set<Machine> seen =
+            Collections.newSetFromMap(new IdentityHashMap<>());
+        Machine first = machines[0];
+        for (Machine machine : machines) {
+            if (!seen.add(machine)
+                || machine.numRotors() != first.numRotors()
+                || machine.numPawls() != first.numPawls()
+                || machine.alphabet().size() != first.alphabet().size()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the number of lanes of the Vector API, or 0 if it is not
+     *  available. */
+    private static int lanes() {
+        try {
+            return VectorBatch.lanes();
+        } catch (LinkageError excp) {
+            return 0;
+        }
+    }
+
+    /** Number of lanes of the Vector API, or 0 if it is unavailable. */
+    private static final int LANES = lanes();
+
+    /** True iff I convert with the Vector API where I can. */
+    private final boolean _vector;
+}
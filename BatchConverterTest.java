@@ -0,0 +1,123 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BatchConverter class.
+ *  @author
+ */
+public class BatchConverterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a random character of UPPER chosen by RANDOM. */
+    private static char letter(Random random) {
+        return UPPER.toChar(random.nextInt(UPPER.size()));
+    }
+
+    /** Return the naval machine with rotors, rings, positions and
+     *  plugboard chosen by RANDOM. */
+    private static Machine randomMachine(Random random) {
+        Machine M = MachineTest.navalMachine();
+        List<String> moving = new ArrayList<>(List.of("I", "II", "III",
+            "IV", "V", "VI", "VII", "VIII"));
+        Collections.shuffle(moving, random);
+        M.insertRotors(new String[] {
+            random.nextBoolean() ? "B" : "C",
+            random.nextBoolean() ? "Beta" : "Gamma",
+            moving.get(0), moving.get(1), moving.get(2) });
+        StringBuilder rings = new StringBuilder(),
+            positions = new StringBuilder();
+        for (int i = 0; i < 4; i += 1) {
+            rings.append(letter(random));
+            positions.append(letter(random));
+        }
+        M.setRing(rings.toString());
+        M.setRotors(positions.toString());
+        List<Character> letters = new ArrayList<>();
+        for (char c = 'A'; c <= 'Z'; c += 1) {
+            letters.add(c);
+        }
+        Collections.shuffle(letters, random);
+        StringBuilder plugboard = new StringBuilder();
+        for (int i = 0; i < 2 * random.nextInt(11); i += 2) {
+            plugboard.append('(').append(letters.get(i))
+                .append(letters.get(i + 1)).append(')');
+        }
+        M.setPlugboard(new Permutation(plugboard.toString(), UPPER));
+        return M;
+    }
+
+    /** Check that converting N random messages (some empty, some long)
+     *  with BATCH gives the results of converting each with its own
+     *  machine, and leaves the machines in the same states. */
+    private static void checkBatch(BatchConverter batch, int n, long seed) {
+        Random random = new Random(seed);
+        Machine[] machines = new Machine[n], expected = new Machine[n];
+        String[] messages = new String[n];
+        for (int k = 0; k < n; k += 1) {
+            machines[k] = randomMachine(random);
+            expected[k] = machines[k].copy();
+            StringBuilder message = new StringBuilder();
+            int length = random.nextInt(4) == 0 ? 0 : random.nextInt(800);
+            for (int i = 0; i < length; i += 1) {
+                message.append(i % 7 == 6 ? ' ' : letter(random));
+            }
+            messages[k] = message.toString();
+        }
+        String[] results = batch.convert(machines, messages);
+        for (int k = 0; k < n; k += 1) {
+            assertEquals(msg("batch", "message %d", k),
+                         expected[k].convert(messages[k]), results[k]);
+            assertEquals(msg("batch", "state after message %d", k),
+                         expected[k].convert("ENIGMAENIGMAENIGMA"),
+                         machines[k].convert("ENIGMAENIGMAENIGMA"));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void vectorMatchesMachines() {
+        checkBatch(new BatchConverter(true), 37, 61);
+        checkBatch(new BatchConverter(true), 3, 62);
+    }
+
+    @Test
+    public void scalarMatchesMachines() {
+        BatchConverter batch = new BatchConverter(false);
+        assertFalse(batch.vectorized());
+        checkBatch(batch, 37, 61);
+    }
+
+    @Test
+    public void repeatedMachineConvertsInOrder() {
+        Machine M = MachineTest.exampleMachine(),
+            expected = MachineTest.exampleMachine();
+        String[] results = new BatchConverter().convert(
+            new Machine[] { M, M }, new String[] { "FROM HIS", "SHOULDER" });
+        assertEquals(expected.convert("FROMHIS"), results[0]);
+        assertEquals(expected.convert("SHOULDER"), results[1]);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsForeignCharacter() {
+        new BatchConverter().convert(
+            new Machine[] { MachineTest.exampleMachine() },
+            new String[] { "FROM his" });
+    }
+
+}
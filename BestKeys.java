@@ -0,0 +1,58 @@
+package enigma;
+
+/** The best-scoring of the keys (numbers, as in KeySpace) offered to it,
+ *  up to a fixed number of them, in no particular order.  Each task of a
+ *  search keeps its own, and merges it into the search's results when it
+ *  finishes.
+ *  @author Manavjot Singh
+ */
+final class BestKeys {
+
+    /** A collection that keeps the best N keys. */
+    BestKeys(int n) {
+        _keys = new long[n];
+        _scores = new double[n];
+    }
+
+    /** Offer key number KEY, with score SCORE, replacing the worst key I
+     *  keep if I am full and KEY scores better. */
+    void offer(long key, double score) {
+        if (_kept < _keys.length) {
+            _keys[_kept] = key;
+            _scores[_kept++] = score;
+            return;
+        }
+        int worst = 0;
+        for (int i = 1; i < _kept; i++) {
+            if (_scores[i] < _scores[worst]) {
+                worst = i;
+            }
+        }
+        if (score > _scores[worst]) {
+            _keys[worst] = key;
+            _scores[worst] = score;
+        }
+    }
+
+    /** Return the number of keys I keep. */
+    int size() {
+        return _kept;
+    }
+
+    /** Return the number of the Ith key I keep. */
+    long key(int i) {
+        return _keys[i];
+    }
+
+    /** Return the score of the Ith key I keep. */
+    double score(int i) {
+        return _scores[i];
+    }
+
+    /** Numbers and scores of the keys kept, in _keys[0 .. _kept-1]. */
+    private final long[] _keys;
+    private final double[] _scores;
+
+    /** Number of keys kept. */
+    private int _kept;
+}
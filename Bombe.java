@@ -0,0 +1,552 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A search, in the manner of the Turing-Welchman Bombe, for the keys
+ *  under which a ciphertext could be the encryption of a known piece of
+ *  its plaintext (a crib).  A key is a choice of rotors for the slots of
+ *  a machine together with their positions; the plugboard is deduced
+ *  rather than searched.
+ *
+ *  Since the plugboard P is applied on both sides of the rotors, a crib
+ *  letter p enciphered as c at message position i means that the rotors
+ *  alone (S_i) take P(p) to P(c).  The crib thus forms a menu: a graph
+ *  on letters with an edge labelled i between p and c.  Under a given
+ *  key, the hypothesis P(a) = x for a letter a of the menu implies
+ *  P(b) = S_i(x) for each edge from a to b, and also P(x) = a (the
+ *  diagonal board), and so on.  If the closure of these implications
+ *  gives some letter two partners, every hypothesis P(a) = y in it is
+ *  refuted at once.  A key at which some hypothesis survives for every
+ *  connected part of the menu is a stop, and the surviving closures give
+ *  part of its plugboard (only the first surviving hypothesis is shown
+ *  for each part, so pairs from a small part may be wrong).
+ *
+ *  Rings only matter when rotors turn over.  All rings are taken to be
+ *  at the first character, except that the ring of the rightmost rotor,
+ *  which decides when the rotor to its left turns over within the crib,
+ *  may be searched as well.
+ *  @author Manavjot Singh
+ */
+class Bombe {
+
+    /** Search for the keys of the machine configured by ARGS[0] under
+     *  which the ciphertext in the file named ARGS[1] has the crib ARGS[2]
+     *  as its plaintext, starting at the (optional) message position
+     *  ARGS[3], which defaults to 0.  Prints each stop as a setting line,
+     *  and a summary on the standard error.  Searches the ring of the
+     *  rightmost rotor as well iff the system property enigma.bombe.rings
+     *  is true. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("Usage: java enigma.Bombe CONFIG CIPHERTEXT "
+                            + "CRIB [OFFSET]");
+            }
+            String ciphertext;
+            try {
+                ciphertext = new String(Files.readAllBytes(Paths.get(args[1])),
+                                        Charset.defaultCharset());
+            } catch (IOException excp) {
+                throw error("could not open %s", args[1]);
+            }
+            int offset = 0;
+            if (args.length == 4) {
+                try {
+                    offset = Integer.parseInt(args[3]);
+                } catch (NumberFormatException excp) {
+                    throw error("bad crib offset: %s", args[3]);
+                }
+            }
+            Bombe bombe = new Bombe(Main.loadMachine(args[0]), ciphertext,
+                                    args[2], offset);
+            bombe.setRings(Boolean.getBoolean("enigma.bombe.rings"));
+            long start = System.nanoTime();
+            for (Stop stop : bombe.search(ForkJoinPool.commonPool())) {
+                System.out.println(stop);
+            }
+            double secs = (System.nanoTime() - start) * 1e-9;
+            System.err.printf("%d keys in %.1f s (%.0f keys/s)%n",
+                              bombe.keys(), secs, bombe.keys() / secs);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A search of the keys of MACHINE, whose available rotors are used,
+     *  for those under which the plaintext of CIPHERTEXT at message
+     *  position OFFSET starts with CRIB.  Whitespace in CIPHERTEXT and CRIB
+     *  is ignored, as in messages. */
+    Bombe(Machine machine, String ciphertext, String crib, int offset) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        int[] cipher = Machine.indices(_alphabet, ciphertext),
+            plain = Machine.indices(_alphabet, crib);
+        if (plain.length == 0) {
+            throw error("empty crib");
+        }
+        if (offset < 0 || offset + plain.length > cipher.length) {
+            throw error("crib does not fit in ciphertext at offset %d",
+                        offset);
+        }
+        _offset = offset;
+        _length = plain.length;
+        int[] degree = new int[_size];
+        for (int j = 0; j < _length; j++) {
+            int p = plain[j], c = cipher[offset + j];
+            if (p == c) {
+                throw error("crib character %c cannot encipher to itself",
+                            _alphabet.toChar(p));
+            }
+            degree[p] += 1;
+            degree[c] += 1;
+        }
+        _neighbors = new int[_size][];
+        _steps = new int[_size][];
+        for (int u = 0; u < _size; u++) {
+            _neighbors[u] = new int[degree[u]];
+            _steps[u] = new int[degree[u]];
+            degree[u] = 0;
+        }
+        for (int j = 0; j < _length; j++) {
+            int p = plain[j], c = cipher[offset + j];
+            _neighbors[p][degree[p]] = c;
+            _steps[p][degree[p]++] = j;
+            _neighbors[c][degree[c]] = p;
+            _steps[c][degree[c]++] = j;
+        }
+        _tests = testLetters();
+        _orders = orders(machine);
+    }
+
+    /** Return the best-connected letter of each connected part of the
+     *  menu, the largest part first. */
+    private int[] testLetters() {
+        int[] part = new int[_size];
+        Arrays.fill(part, -1);
+        List<int[]> parts = new ArrayList<>();
+        for (int u = 0; u < _size; u++) {
+            if (part[u] >= 0 || _neighbors[u].length == 0) {
+                continue;
+            }
+            int best = u, count = 0;
+            int[] queue = new int[_size];
+            int head = 0, tail = 0;
+            queue[tail++] = u;
+            part[u] = parts.size();
+            while (head < tail) {
+                int v = queue[head++];
+                count += 1;
+                if (_neighbors[v].length > _neighbors[best].length) {
+                    best = v;
+                }
+                for (int w : _neighbors[v]) {
+                    if (part[w] < 0) {
+                        part[w] = parts.size();
+                        queue[tail++] = w;
+                    }
+                }
+            }
+            parts.add(new int[] { best, count });
+        }
+        parts.sort(Comparator.comparingInt((int[] p) -> -p[1]));
+        int[] result = new int[parts.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = parts.get(i)[0];
+        }
+        return result;
+    }
+
+    /** Return every assignment of the available rotors of MACHINE to its
+     *  slots that MACHINE.insertRotors would accept, in the order in
+     *  which the rotors were configured. */
+    static List<Rotor[]> orders(Machine machine) {
+        List<Rotor[]> result = new ArrayList<>();
+        Rotor[] rotors = machine.availableRotors().toArray(new Rotor[0]);
+        orders(machine, rotors, new boolean[rotors.length],
+               new Rotor[machine.numRotors()], 0, result);
+        return result;
+    }
+
+    /** Add to RESULT every completion of the assignment of ROTORS (of
+     *  which those marked in USED are taken) to the slots of MACHINE
+     *  from SLOT onward, where ORDER holds the earlier slots. */
+    private static void orders(Machine machine, Rotor[] rotors,
+                               boolean[] used, Rotor[] order, int slot,
+                               List<Rotor[]> result) {
+        if (slot == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        for (int r = 0; r < rotors.length; r++) {
+            if (!used[r] && machine.fits(rotors[r], slot)) {
+                used[r] = true;
+                order[slot] = rotors[r];
+                orders(machine, rotors, used, order, slot + 1, result);
+                used[r] = false;
+            }
+        }
+    }
+
+    /** Search the ring of the rightmost rotor as well as positions iff
+     *  RINGS. */
+    void setRings(boolean rings) {
+        _rings = rings;
+    }
+
+    /** Return the number of keys searched. */
+    long keys() {
+        return _tested.sum();
+    }
+
+    /** Return the stops of a search of all keys on POOL, in key order. */
+    List<Stop> search(ForkJoinPool pool) {
+        _perOrder = _rings ? _size : 1;
+        for (int i = 1; i < _machine.numRotors(); i++) {
+            _perOrder = Math.multiplyExact(_perOrder, (long) _size);
+        }
+        _stops.clear();
+        pool.invoke(new Search(0, Math.multiplyExact(_perOrder,
+                                                     _orders.size())));
+        List<Stop> result = new ArrayList<>(_stops);
+        result.sort(Comparator.comparingLong((Stop s) -> s._key));
+        return Collections.unmodifiableList(result);
+    }
+
+    /** A key at which the crib is consistent with the ciphertext. */
+    static final class Stop {
+
+        /** A stop at key number KEY with the rotors named ROTORS at the
+         *  positions and rings given by the characters of POSITIONS and
+         *  RINGS, with the plugboard connections PLUGBOARD that the crib
+         *  implies. */
+        Stop(long key, String[] rotors, String positions, String rings,
+             String plugboard) {
+            _key = key;
+            _rotors = rotors;
+            _positions = positions;
+            _rings = rings;
+            _plugboard = plugboard;
+        }
+
+        /** Return the names of my rotors, by slot. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return the characters showing in the windows at my key. */
+        String positions() {
+            return _positions;
+        }
+
+        /** Return my ring settings. */
+        String rings() {
+            return _rings;
+        }
+
+        /** Return the plugboard connections implied by the crib, in cycle
+         *  notation. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return me as a setting line. */
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _rotors) + " " + _positions + " "
+                + _rings + (_plugboard.isEmpty() ? "" : " " + _plugboard);
+        }
+
+        /** Number of my key in the search. */
+        private final long _key;
+        /** Names of my rotors. */
+        private final String[] _rotors;
+        /** My positions and rings. */
+        private final String _positions, _rings;
+        /** Plugboard connections implied by the crib. */
+        private final String _plugboard;
+    }
+
+    /** The search of a range of keys, split among threads. */
+    private class Search extends RecursiveAction {
+
+        /** A search of keys LO .. HI-1. */
+        Search(long lo, long hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > GRAIN) {
+                long mid = _lo + (_hi - _lo) / 2;
+                invokeAll(new Search(_lo, mid), new Search(mid, _hi));
+            } else {
+                Scan scan = new Scan();
+                for (long key = _lo; key < _hi; key++) {
+                    scan.test(key);
+                }
+                _tested.add(_hi - _lo);
+            }
+        }
+
+        /** Range of keys. */
+        private final long _lo, _hi;
+    }
+
+    /** The working storage of one thread of the search. */
+    private class Scan {
+
+        /** Mappings of the rotors at each crib position, computed as
+         *  needed: _tables[j][v] is valid iff _valid[j][v] == _key. */
+        private final int[][] _tables = new int[_length][_size],
+            _valid = new int[_length][_size];
+        /** Settings of the rotors at each crib position. */
+        private final MachineState[] _states = new MachineState[_length];
+        /** Number of keys tested, plus 1. */
+        private int _key;
+        /** Positions of the key being tested, by slot. */
+        private final int[] _positions = new int[_machine.numRotors()];
+        /** The partner of each letter implied by the current closure,
+         *  valid for u iff _seen[u] == _stamp. */
+        private final int[] _mate = new int[_size], _seen = new int[_size];
+        /** Letters whose partners are implied but not yet followed. */
+        private final int[] _stack = new int[_size];
+        /** Number of letters in _stack. */
+        private int _top;
+        /** Hypotheses for the test letter of the menu's largest part
+         *  that survive at the current key. */
+        private final int[] _survivors = new int[_size];
+        /** Partners of the letters of the surviving closures, or -1. */
+        private final int[] _partner = new int[_size];
+        /** Generation of the current closure. */
+        private int _stamp;
+        /** Order whose spec and state are below, or -1. */
+        private int _order = -1;
+        /** Wiring of _order, without a plugboard. */
+        private MachineSpec _spec;
+        /** Settings of _spec. */
+        private MachineState _state;
+
+        /** Test key number KEY, recording it if it is a stop. */
+        void test(long key) {
+            int order = (int) (key / _perOrder);
+            long rest = key % _perOrder;
+            int m = _positions.length;
+            for (int i = m - 1; i >= 1; i--) {
+                _positions[i] = (int) (rest % _size);
+                rest /= _size;
+            }
+            int ring = (int) rest;
+            Rotor[] rotors = _orders.get(order);
+            for (int i = 1; i < m; i++) {
+                if (rotors[i].reflecting() && _positions[i] != 0) {
+                    return;
+                }
+            }
+            if (order != _order) {
+                _order = order;
+                _spec = new MachineSpec(_alphabet, _machine.numPawls(),
+                                        rotors, null);
+                _state = new MachineState(m, _size);
+                for (int j = 0; j < _length; j++) {
+                    _states[j] = new MachineState(m, _size);
+                }
+            }
+            _state.setRing(m - 1, ring);
+            for (int i = 1; i < m; i++) {
+                _state.setPosition(i, _positions[i]);
+            }
+            _spec.advance(_state, _offset);
+            _spec.reflection(_state);
+            for (int j = 0; j < _length; j++) {
+                _spec.step(_state);
+                _states[j].copyFrom(_state);
+            }
+            _key += 1;
+            test(key, rotors, ring);
+        }
+
+        /** Test the key KEY with ROTORS at RING, whose rotor settings at
+         *  each crib position have been computed, recording each stop. */
+        private void test(long key, Rotor[] rotors, int ring) {
+            int a = _tests[0], found = 0;
+            for (int x = 0; x < _size; x++) {
+                if (closure(a, x)) {
+                    _survivors[found++] = x;
+                }
+            }
+            if (found == 0) {
+                return;
+            }
+            Arrays.fill(_partner, -1);
+            for (int t = 1; t < _tests.length; t++) {
+                if (!survives(_tests[t])) {
+                    return;
+                }
+                record();
+            }
+            for (int i = 0; i < found; i++) {
+                closure(a, _survivors[i]);
+                _stops.add(stop(key, rotors, ring));
+            }
+        }
+
+        /** Return true iff some hypothesis P(A) = x has a consistent
+         *  closure, leaving the first such closure current. */
+        private boolean survives(int a) {
+            for (int x = 0; x < _size; x++) {
+                if (closure(a, x)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Compute the closure of the hypothesis P(A) = X as a new
+         *  generation, and return true iff it is consistent, stopping at
+         *  the first contradiction. */
+        private boolean closure(int a, int x) {
+            _stamp += 1;
+            _top = 0;
+            imply(a, x);
+            while (_top > 0) {
+                int u = _stack[--_top], v = _mate[u];
+                if (!imply(v, u)) {
+                    return false;
+                }
+                int[] neighbors = _neighbors[u], steps = _steps[u];
+                for (int e = 0; e < neighbors.length; e++) {
+                    if (!imply(neighbors[e], scramble(steps[e], v))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Add P(U) = V to the current closure, returning false iff U
+         *  already has a different partner in it. */
+        private boolean imply(int u, int v) {
+            if (_seen[u] == _stamp) {
+                return _mate[u] == v;
+            }
+            _seen[u] = _stamp;
+            _mate[u] = v;
+            _stack[_top++] = u;
+            return true;
+        }
+
+        /** Return the conversion of V by the rotors at crib position J.
+         *  Since that is an involution, converting its result gives V. */
+        private int scramble(int j, int v) {
+            if (_valid[j][v] != _key) {
+                int w = _spec.map(_states[j], v);
+                _tables[j][v] = w;
+                _tables[j][w] = v;
+                _valid[j][v] = _valid[j][w] = _key;
+            }
+            return _tables[j][v];
+        }
+
+        /** Record the partners given by the current closure. */
+        private void record() {
+            for (int u = 0; u < _size; u++) {
+                if (_seen[u] == _stamp) {
+                    _partner[u] = _mate[u];
+                }
+            }
+        }
+
+        /** Return the stop at KEY with ROTORS at RING, whose plugboard is
+         *  given by the current closure and _partner. */
+        private Stop stop(long key, Rotor[] rotors, int ring) {
+            int[] saved = _partner.clone();
+            record();
+            StringBuilder plugboard = new StringBuilder();
+            for (int u = 0; u < _size; u++) {
+                int v = _partner[u];
+                if (v > u) {
+                    if (plugboard.length() > 0) {
+                        plugboard.append(' ');
+                    }
+                    plugboard.append('(').append(_alphabet.toChar(u))
+                        .append(_alphabet.toChar(v)).append(')');
+                }
+            }
+            System.arraycopy(saved, 0, _partner, 0, _size);
+            String[] names = new String[rotors.length];
+            char[] positions = new char[rotors.length - 1];
+            char[] rings = new char[rotors.length - 1];
+            for (int i = 0; i < rotors.length; i++) {
+                names[i] = rotors[i].name();
+                if (i > 0) {
+                    positions[i - 1] = _alphabet.toChar(_positions[i]);
+                    rings[i - 1] = _alphabet.toChar(0);
+                }
+            }
+            rings[rings.length - 1] = _alphabet.toChar(ring);
+            return new Stop(key, names, new String(positions),
+                            new String(rings), plugboard.toString());
+        }
+    }
+
+    /** Largest number of keys searched as a single task. */
+    private static final int GRAIN = 1 << 12;
+
+    /** The machine whose rotors are searched. */
+    private final Machine _machine;
+
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Message position of the start of the crib. */
+    private final int _offset;
+
+    /** Length of the crib. */
+    private final int _length;
+
+    /** Letters joined to each letter by the menu. */
+    private final int[][] _neighbors;
+
+    /** Crib positions of the menu edges in _neighbors. */
+    private final int[][] _steps;
+
+    /** Test letter of each connected part of the menu. */
+    private final int[] _tests;
+
+    /** All permitted assignments of rotors to slots. */
+    private final List<Rotor[]> _orders;
+
+    /** True iff the ring of the rightmost rotor is searched. */
+    private boolean _rings;
+
+    /** Number of keys for each order. */
+    private long _perOrder;
+
+    /** Stops found so far. */
+    private final ConcurrentLinkedQueue<Stop> _stops =
+        new ConcurrentLinkedQueue<>();
+
+    /** Number of keys searched. */
+    private final LongAdder _tested = new LongAdder();
+}
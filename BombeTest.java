@@ -0,0 +1,82 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Plaintext of the test message. */
+    private static final String PLAIN =
+        "WEATHERFORECASTFORTHEBAYOFBISCAYTODAYCLEARSKIES";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void ordersFollowSlotRules() {
+        List<Rotor[]> orders = Bombe.orders(smallMachine(4));
+        assertEquals(6, orders.size());
+        for (Rotor[] order : orders) {
+            assertEquals("B", order[0].name());
+            assertEquals("Beta", order[1].name());
+            assertFalse(order[2] == order[3]);
+        }
+    }
+
+    @Test
+    public void findsKey() {
+        Machine M = smallMachine(4);
+        M.insertRotors(new String[] {"B", "Beta", "II", "I"});
+        M.setRotors("DQX");
+        M.setPlugboard(new Permutation("(AW) (ET) (HR) (KS)", UPPER));
+        String cipher = M.convert(PLAIN);
+        Bombe bombe = new Bombe(smallMachine(4), cipher,
+                                PLAIN.substring(0, 24), 0);
+        boolean found = false;
+        for (Bombe.Stop stop : bombe.search(ForkJoinPool.commonPool())) {
+            if (String.join(" ", stop.rotors()).equals("B Beta II I")
+                && stop.positions().equals("DQX")) {
+                found = true;
+                for (String pair : stop.plugboard().split(" ")) {
+                    assertTrue(msg("findsKey", "pair %s", pair),
+                               "(AW) (ET) (HR) (KS)".contains(pair));
+                }
+            }
+        }
+        assertTrue("key not found", found);
+        assertEquals(6 * 26 * 26 * 26, bombe.keys());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsSelfEncipherment() {
+        new Bombe(smallMachine(4), "ABC", "XBZ", 0);
+    }
+
+    @Test
+    public void rejectsEmptyCrib() {
+        for (String crib : new String[] {"", "   "}) {
+            try {
+                new Bombe(smallMachine(4), "ABC", crib, 0);
+                fail("accepted an empty crib");
+            } catch (EnigmaException excp) {
+                assertEquals("empty crib", excp.getMessage());
+            }
+        }
+    }
+
+}
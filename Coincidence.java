@@ -0,0 +1,45 @@
+package enigma;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/** Scores texts by their index of coincidence: the chance that two of
+ *  their characters chosen at random are the same.  This is higher the
+ *  less uniform a text's character counts are, and so does not depend
+ *  on the plaintext language.
+ *  @author Manavjot Singh
+ */
+final class Coincidence implements Scorer {
+
+    /** A scorer for texts over an alphabet of SIZE characters. */
+    Coincidence(int size) {
+        _counts = new int[size];
+    }
+
+    @Override
+    public double score(int[] text, int len) {
+        if (len < 2) {
+            return 0.0;
+        }
+        Arrays.fill(_counts, 0);
+        for (int i = 0; i < len; i++) {
+            _counts[text[i]] += 1;
+        }
+        long same = 0;
+        for (int f : _counts) {
+            same += (long) f * (f - 1);
+        }
+        return (double) same / ((long) len * (len - 1));
+    }
+
+    @Override
+    public void identify(MessageDigest digest) {
+        digest.update(("coincidence " + _counts.length)
+                      .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Number of occurrences of each character in the last text
+     *  scored. */
+    private final int[] _counts;
+}
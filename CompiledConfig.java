@@ -0,0 +1,352 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** Configuration files compiled to a binary form that loads without
+ *  tokenizing or parsing cycle notation.  A compiled file holds the
+ *  alphabet, the numbers of slots and pawls, and for each available
+ *  rotor (in order) its kind, name, notches and forward and inverse
+ *  tables, so that no permutation need be rebuilt from cycle notation.
+ *  Main accepts a compiled file wherever it accepts a configuration
+ *  file, recognizing it by its first bytes.
+ *
+ *  Loading is nonetheless linear in the size of the library, in two
+ *  passes over the file: one to check the CRC of the body, and one to
+ *  decode every rotor's tables into a Permutation, since a Machine is
+ *  built from all of its available rotors (and numbers them by name)
+ *  before any is inserted.  The mapping serves only as the buffer the
+ *  rotors are decoded from.
+ *
+ *  The file is memory-mapped when loaded.  It starts with a header of
+ *  the magic number, the format version, and the length and CRC-32 of
+ *  the rest (the body), so that truncated or damaged files are
+ *  rejected.  The body records the name, length, modification time and
+ *  CRC-32 of the configuration file it was compiled from; a compiled
+ *  file whose source still exists but has changed is stale, and is
+ *  rejected too.  All numbers are big-endian.  Characters are code
+ *  points of 32 bits; notches and table entries take one, two or four
+ *  bytes, as for an IndexTable of the alphabet.
+ *
+ *  To compile a configuration file, run
+ *      java enigma.CompiledConfig CONFIG OUTPUT
+ *  @author Manavjot Singh
+ */
+final class CompiledConfig {
+
+    /** Not instantiable. */
+    private CompiledConfig() {
+    }
+
+    /** Compile the configuration file named by ARGS[0] into the file
+     *  named by ARGS[1]. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 2) {
+                throw error("Usage: java enigma.CompiledConfig CONFIG OUTPUT");
+            }
+            compile(args[0], args[1]);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Compile the configuration file named CONFIG into the file named
+     *  OUTPUT, which is replaced atomically. */
+    static void compile(String config, String output) {
+        Path source = Paths.get(config).toAbsolutePath();
+        byte[] text = read(source);
+        Machine machine = Main.loadMachine(config);
+        byte[] body;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, source.toString());
+            out.writeLong(text.length);
+            out.writeLong(modified(source));
+            out.writeInt(crc(ByteBuffer.wrap(text)));
+            write(out, machine);
+            out.flush();
+            body = bytes.toByteArray();
+        } catch (IOException excp) {
+            throw error("could not compile %s", config);
+        }
+        ByteBuffer file = ByteBuffer.allocate(HEADER + body.length);
+        file.putInt(MAGIC).putInt(VERSION).putInt(body.length)
+            .putInt(crc(ByteBuffer.wrap(body))).put(body);
+        Path target = Paths.get(output);
+        Path temp = Paths.get(output + ".tmp");
+        try {
+            Files.write(temp, file.array());
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write %s", output);
+        }
+    }
+
+    /** Write the shape and rotors of MACHINE to OUT. */
+    private static void write(DataOutputStream out, Machine machine)
+        throws IOException {
+        Alphabet alphabet = machine.alphabet();
+        int size = alphabet.size();
+        out.writeInt(machine.numRotors());
+        out.writeInt(machine.numPawls());
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(alphabet.toCodePoint(i));
+        }
+        out.writeInt(machine.availableRotors().size());
+        for (Rotor rotor : machine.availableRotors()) {
+            out.writeByte(rotor.reflecting() ? REFLECTOR
+                          : rotor.rotates() ? MOVING : FIXED);
+            writeString(out, rotor.name());
+            boolean[] notches = rotor.notches();
+            int count = 0;
+            for (boolean notch : notches) {
+                count += notch ? 1 : 0;
+            }
+            out.writeInt(count);
+            for (int p = 0; p < size; p++) {
+                if (notches[p]) {
+                    writeEntry(out, p, size);
+                }
+            }
+            Permutation perm = rotor.permutation();
+            for (int p = 0; p < size; p++) {
+                writeEntry(out, perm.permute(p), size);
+            }
+            for (int p = 0; p < size; p++) {
+                writeEntry(out, perm.invert(p), size);
+            }
+        }
+    }
+
+    /** Write the index I into an alphabet of SIZE characters to OUT, in
+     *  as many bytes as an entry of such an alphabet's tables takes. */
+    private static void writeEntry(DataOutputStream out, int i, int size)
+        throws IOException {
+        switch (width(size)) {
+        case 1:
+            out.writeByte(i);
+            break;
+        case 2:
+            out.writeShort(i);
+            break;
+        default:
+            out.writeInt(i);
+            break;
+        }
+    }
+
+    /** Return the number of bytes in an entry of the tables of an
+     *  alphabet of SIZE characters. */
+    private static int width(int size) {
+        return size <= IndexTable.BYTE_LIMIT ? 1
+            : size <= IndexTable.SHORT_LIMIT ? 2 : 4;
+    }
+
+    /** Write S to OUT as its length in bytes and its UTF-8 bytes. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Return true iff the file named NAME exists and starts as a
+     *  compiled configuration does. */
+    static boolean isCompiled(String name) {
+        try (FileChannel channel = FileChannel.open(Paths.get(name))) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                continue;
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return a machine, with its rotors available but not inserted,
+     *  loaded from the compiled configuration file named NAME, in time
+     *  linear in its length (see above). */
+    static Machine load(String name) {
+        ByteBuffer file;
+        try (FileChannel channel = FileChannel.open(Paths.get(name),
+                                                    StandardOpenOption.READ)) {
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        try {
+            if (file.getInt() != MAGIC) {
+                throw error("%s is not a compiled configuration", name);
+            }
+            if (file.getInt() != VERSION) {
+                throw error("%s was compiled by another version; "
+                            + "recompile it", name);
+            }
+            int length = file.getInt(), crc = file.getInt();
+            if (length != file.remaining()
+                || crc(file.duplicate()) != crc) {
+                throw error("compiled configuration %s is damaged", name);
+            }
+            checkSource(name, file);
+            return read(file);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                 | IndexOutOfBoundsException
+                 | NegativeArraySizeException excp) {
+            throw error("compiled configuration %s is damaged", name);
+        }
+    }
+
+    /** Check that the source recorded at the current position of FILE,
+     *  the compiled file NAME, is missing or unchanged. */
+    private static void checkSource(String name, ByteBuffer file) {
+        Path source = Paths.get(readString(file));
+        long length = file.getLong(), modified = file.getLong();
+        int crc = file.getInt();
+        if (!Files.isRegularFile(source)) {
+            return;
+        }
+        try {
+            if (Files.size(source) == length
+                && modified(source) == modified) {
+                return;
+            }
+        } catch (IOException excp) {
+            return;
+        }
+        if (crc(ByteBuffer.wrap(read(source))) != crc) {
+            throw error("compiled configuration %s is out of date with %s; "
+                        + "recompile it", name, source);
+        }
+    }
+
+    /** Return a machine read from the current position of FILE. */
+    private static Machine read(ByteBuffer file) {
+        int numRotors = file.getInt(), pawls = file.getInt();
+        int size = file.getInt();
+        if (numRotors <= pawls || pawls < 0 || size <= 0
+            || size > file.remaining() / 4) {
+            throw new IllegalArgumentException();
+        }
+        int[] chars = new int[size];
+        file.asIntBuffer().get(chars);
+        file.position(file.position() + 4 * size);
+        Alphabet alphabet = new Alphabet(new String(chars, 0, size));
+        int count = file.getInt();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (int k = 0; k < count; k++) {
+            byte kind = file.get();
+            String rotorName = readString(file);
+            int[] notches = new int[file.getInt()];
+            for (int i = 0; i < notches.length; i++) {
+                notches[i] = chars[entry(file, size)];
+            }
+            int[] forward = table(file, size), inverse = table(file, size);
+            Permutation perm = new Permutation(forward, inverse, alphabet);
+            switch (kind) {
+            case MOVING:
+                rotors.add(new MovingRotor(rotorName, perm,
+                                           new String(notches, 0,
+                                                      notches.length)));
+                break;
+            case FIXED:
+                rotors.add(new FixedRotor(rotorName, perm));
+                break;
+            case REFLECTOR:
+                rotors.add(new Reflector(rotorName, perm));
+                break;
+            default:
+                throw new IllegalArgumentException();
+            }
+        }
+        return new Machine(alphabet, numRotors, pawls, rotors);
+    }
+
+    /** Return a table of the SIZE entries of a table of an alphabet of
+     *  SIZE characters, read from FILE. */
+    private static int[] table(ByteBuffer file, int size) {
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = entry(file, size);
+        }
+        return result;
+    }
+
+    /** Return an entry of a table of an alphabet of SIZE characters, read
+     *  from FILE. */
+    private static int entry(ByteBuffer file, int size) {
+        switch (width(size)) {
+        case 1:
+            return file.get() & BYTE_MASK;
+        case 2:
+            return file.getChar();
+        default:
+            return file.getInt();
+        }
+    }
+
+    /** Return a string read from FILE, as written by writeString. */
+    private static String readString(ByteBuffer file) {
+        byte[] bytes = new byte[file.getInt()];
+        file.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Return the contents of the file FILE. */
+    private static byte[] read(Path file) {
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** Return the modification time of FILE, in milliseconds. */
+    private static long modified(Path file) throws IOException {
+        return Files.getLastModifiedTime(file).toMillis();
+    }
+
+    /** Return the CRC-32 of the remaining bytes of BYTES, consuming
+     *  them. */
+    private static int crc(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /** First four bytes of a compiled configuration: "EnC" and 1. */
+    static final int MAGIC = 0x456e4301;
+
+    /** Version of the format written. */
+    static final int VERSION = 2;
+
+    /** Length of the header. */
+    private static final int HEADER = 16;
+
+    /** Mask of the bits of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Kinds of rotor. */
+    private static final byte MOVING = 'M', FIXED = 'N', REFLECTOR = 'R';
+}
@@ -0,0 +1,145 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The suite of all JUnit tests for the CompiledConfig class.
+ *  @author
+ */
+public class CompiledConfigTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A configuration with moving, fixed and reflecting rotors. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n"
+        + "5 3\n"
+        + "I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + "II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + "III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + "IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + "VI MZM (AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)\n"
+        + "Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + "B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "     (RX) (SZ) (TV)\n";
+
+    /** Return the names of the available rotors of M, in order. */
+    private static List<String> names(Machine M) {
+        List<String> result = new ArrayList<>();
+        for (Rotor rotor : M.availableRotors()) {
+            result.add(rotor.name());
+        }
+        return result;
+    }
+
+    /** Set up M with ROTORS, SETTING and RING, and plugboard (AQ) (EP),
+     *  and return its conversion of a fixed message. */
+    private static String convert(Machine M, String[] rotors,
+                                  String setting, String ring) {
+        M.insertRotors(rotors);
+        M.setRing(ring);
+        M.setRotors(setting);
+        M.setPlugboard(new Permutation("(AQ) (EP)", M.alphabet()));
+        return M.convert("FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF "
+                         + "ROSEWOOD MADE OF SLIDING FOLDING ROSEWOOD");
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void compiledMatchesText() throws IOException {
+        Path dir = Files.createTempDirectory("compiled");
+        Path config = dir.resolve("naval.conf");
+        Path compiled = dir.resolve("naval.bin");
+        try {
+            Files.write(config, CONFIG.getBytes("US-ASCII"));
+            CompiledConfig.compile(config.toString(), compiled.toString());
+            assertTrue(CompiledConfig.isCompiled(compiled.toString()));
+            assertFalse(CompiledConfig.isCompiled(config.toString()));
+            Machine text = Main.loadMachine(config.toString());
+            Machine binary = Main.loadMachine(compiled.toString());
+            assertEquals(names(text), names(binary));
+            String[][] orders = {
+                {"B", "Beta", "III", "IV", "I"},
+                {"B", "Beta", "VI", "II", "I"},
+            };
+            for (String[] order : orders) {
+                assertEquals(convert(text, order, "AXLE", "BZAZ"),
+                             convert(binary, order, "AXLE", "BZAZ"));
+                assertEquals(convert(text, order, "ZZZY", "AAAA"),
+                             convert(binary, order, "ZZZY", "AAAA"));
+            }
+        } finally {
+            Files.deleteIfExists(compiled);
+            Files.deleteIfExists(config);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void rejectsDamagedFile() throws IOException {
+        Path dir = Files.createTempDirectory("compiled");
+        Path config = dir.resolve("naval.conf");
+        Path compiled = dir.resolve("naval.bin");
+        try {
+            Files.write(config, CONFIG.getBytes("US-ASCII"));
+            CompiledConfig.compile(config.toString(), compiled.toString());
+            byte[] bytes = Files.readAllBytes(compiled);
+            bytes[bytes.length - 1] ^= 1;
+            Files.write(compiled, bytes);
+            try {
+                CompiledConfig.load(compiled.toString());
+                fail("damaged file accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("damaged"));
+            }
+        } finally {
+            Files.deleteIfExists(compiled);
+            Files.deleteIfExists(config);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void rejectsStaleFile() throws IOException {
+        Path dir = Files.createTempDirectory("compiled");
+        Path config = dir.resolve("naval.conf");
+        Path compiled = dir.resolve("naval.bin");
+        try {
+            Files.write(config, CONFIG.getBytes("US-ASCII"));
+            CompiledConfig.compile(config.toString(), compiled.toString());
+            Files.setLastModifiedTime(config, FileTime.fromMillis(0));
+            CompiledConfig.load(compiled.toString());
+            Files.write(config, CONFIG.replace("(HIX)", "(HXI)")
+                        .getBytes("US-ASCII"));
+            try {
+                CompiledConfig.load(compiled.toString());
+                fail("stale file accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("out of date"));
+            }
+            Files.delete(config);
+            assertEquals(7,
+                CompiledConfig.load(compiled.toString())
+                .availableRotors().size());
+        } finally {
+            Files.deleteIfExists(compiled);
+            Files.deleteIfExists(config);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+}
@@ -0,0 +1,14 @@
+package enigma;
+
+/** The conversion of one keypress by a machine of a particular
+ *  MachineSpec, compiled for that spec alone (see EngineCompiler).
+ *  @author Manavjot Singh
+ */
+interface Engine {
+
+    /** Advance a machine whose rotors are at POSITIONS with rings RINGS
+     *  (both by slot, as in MachineState) by one keypress, updating
+     *  POSITIONS, and return its conversion of C (an index), where
+     *  REFLECTION is its reflection table (see MachineSpec.reflection). */
+    int convert(int[] positions, int[] rings, int[] reflection, int c);
+}
@@ -0,0 +1,611 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/** A compiler of MachineSpecs to Engines: classes whose single method
+ *  steps and converts exactly as the spec does, with the loops over the
+ *  slots unrolled, the alphabet size and slot numbers as constants, the
+ *  tables of the spec as static final fields, and the stepping inlined,
+ *  so that nothing is left to look up or dispatch on at run time.
+ *
+ *  The class is written directly as class-file bytes and defined as a
+ *  hidden class of this package (see
+ *  MethodHandles.Lookup.defineHiddenClassWithClassData), whose static
+ *  initializer fetches its tables from the class data.  Its code is a
+ *  single run of straight-line instructions, with wrapping done by
+ *  arithmetic on signs rather than by branches, so the class needs no
+ *  stack map frames.  Before it is returned, an engine is checked
+ *  against the spec's own step and map on random settings; any engine
+ *  that cannot be built, or that disagrees, is discarded, and the spec
+ *  goes on converting as before.
+ *  @author Manavjot Singh
+ */
+final class EngineCompiler {
+
+    /** Return an Engine for SPEC, or null if one cannot be built or
+     *  fails its check. */
+    static Engine compile(MachineSpec spec) {
+        try {
+            EngineCompiler compiler = new EngineCompiler(spec);
+            byte[] bytes = compiler.generate();
+            if (bytes == null) {
+                return null;
+            }
+            Class<?> engineClass = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(bytes,
+                                                compiler._data.toArray(),
+                                                true)
+                .lookupClass();
+            Engine engine =
+                (Engine) engineClass.getDeclaredConstructor().newInstance();
+            return verify(spec, engine) ? engine : null;
+        } catch (ReflectiveOperationException | LinkageError
+                 | IOException | RuntimeException excp) {
+            return null;
+        }
+    }
+
+    /** Return true iff ENGINE agrees with SPEC, converting and stepping
+     *  from a few random settings. */
+    static boolean verify(MachineSpec spec, Engine engine) {
+        int n = spec.numRotors(), size = spec.alphabet().size();
+        int keys = Math.min(2 * size + 2, MAX_CHECKED_KEYS);
+        Random random = new Random(n * size);
+        for (int trial = 0; trial < CHECKED_SETTINGS; trial++) {
+            MachineState expected = new MachineState(n, size);
+            for (int i = 1; i < n; i++) {
+                expected.setRing(i, random.nextInt(size));
+                expected.setPosition(i, random.nextInt(size));
+            }
+            MachineState actual = expected.copy();
+            for (int k = 0; k < keys; k++) {
+                int c = random.nextInt(size);
+                spec.step(expected);
+                int result = engine.convert(actual.positions(),
+                                            actual.rings(),
+                                            spec.reflection(actual), c);
+                if (result != spec.map(expected, c)
+                    || !Arrays.equals(actual.positions(),
+                                      expected.positions())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** A compiler for SPEC. */
+    private EngineCompiler(MachineSpec spec) {
+        _spec = spec;
+        _size = spec.alphabet().size();
+        _numRotors = spec.numRotors();
+        _boundary = _numRotors - spec.numPawls();
+    }
+
+    /** Return the class file of the engine, or null if its code would be
+     *  too long for a method. */
+    private byte[] generate() throws IOException {
+        int thisClass = classRef(CLASS_NAME);
+        int superClass = classRef("java/lang/Object");
+        int engine = classRef("enigma/Engine");
+        byte[] convert = convertCode();
+        if (convert.length > MAX_CODE) {
+            return null;
+        }
+        byte[] init = initCode(superClass);
+        byte[] clinit = clinitCode();
+        int code = utf8("Code");
+        int[][] methods = {
+            { ACC_PUBLIC, utf8("<init>"), utf8("()V"), 1, 1 },
+            { ACC_STATIC, utf8("<clinit>"), utf8("()V"), 3, 1 },
+            { ACC_PUBLIC, utf8("convert"), utf8("([I[I[II)I"), MAX_STACK,
+              FIRST_SET + _numRotors - _boundary },
+        };
+        byte[][] bodies = { init, clinit, convert };
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(0);
+        out.writeShort(MAJOR_VERSION);
+        out.writeShort(_poolCount);
+        _pool.writeTo(out);
+        out.writeShort(ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(engine);
+        out.writeShort(_fields.size());
+        for (int[] field : _fields) {
+            out.writeShort(ACC_PRIVATE | ACC_STATIC | ACC_FINAL);
+            out.writeShort(field[0]);
+            out.writeShort(field[1]);
+            out.writeShort(0);
+        }
+        out.writeShort(methods.length);
+        for (int m = 0; m < methods.length; m++) {
+            out.writeShort(methods[m][0]);
+            out.writeShort(methods[m][1]);
+            out.writeShort(methods[m][2]);
+            out.writeShort(1);
+            out.writeShort(code);
+            out.writeInt(CODE_OVERHEAD + bodies[m].length);
+            out.writeShort(methods[m][3]);
+            out.writeShort(methods[m][4]);
+            out.writeInt(bodies[m].length);
+            out.write(bodies[m]);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+        out.writeShort(0);
+        return bytes.toByteArray();
+    }
+
+    /** Return the code of the constructor, given the pool index of the
+     *  superclass SUPERCLASS. */
+    private byte[] initCode(int superClass) {
+        _code.reset();
+        load(ALOAD, 0);
+        op(INVOKESPECIAL);
+        u2(member(METHODREF, superClass, "<init>", "()V"));
+        op(RETURN);
+        return _code.toByteArray();
+    }
+
+    /** Return the code of the static initializer, which stores the
+     *  elements of the class data, in order, in my fields. */
+    private byte[] clinitCode() {
+        _code.reset();
+        int handles = classRef("java/lang/invoke/MethodHandles");
+        op(INVOKESTATIC);
+        u2(member(METHODREF, handles, "lookup",
+                  "()Ljava/lang/invoke/MethodHandles$Lookup;"));
+        ldc(string("_"));
+        ldc(classRef("[Ljava/lang/Object;"));
+        op(INVOKESTATIC);
+        u2(member(METHODREF, handles, "classData",
+                  "(Ljava/lang/invoke/MethodHandles$Lookup;"
+                  + "Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;"));
+        op(CHECKCAST);
+        u2(classRef("[Ljava/lang/Object;"));
+        load(ASTORE, 0);
+        for (int k = 0; k < _fields.size(); k++) {
+            load(ALOAD, 0);
+            push(k);
+            op(AALOAD);
+            op(CHECKCAST);
+            u2(classRef(_descriptors.get(k)));
+            op(PUTSTATIC);
+            u2(_fieldRefs.get(k));
+        }
+        op(RETURN);
+        return _code.toByteArray();
+    }
+
+    /** Return the code of convert: the stepping of the rotors under
+     *  pawls (as in Odometer.step), then the passage of the signal (as
+     *  in MachineSpec.map). */
+    private byte[] convertCode() {
+        _code.reset();
+        int last = _numRotors - 1;
+        if (last >= _boundary) {
+            push(0);
+            load(ISTORE, CARRIED);
+            for (int j = _boundary; j < last; j++) {
+                load(ALOAD, POSITIONS);
+                push(j + 1);
+                op(IALOAD);
+                load(ISTORE, POSITION);
+                notch(j + 1);
+                load(ILOAD, CARRIED);
+                op(ICONST_M1, IXOR, IAND);
+                load(ISTORE, CARRY);
+                load(ALOAD, POSITIONS);
+                push(j);
+                load(ALOAD, POSITIONS);
+                push(j);
+                op(IALOAD);
+                load(ILOAD, CARRIED);
+                load(ILOAD, CARRY);
+                op(IOR, IADD);
+                reduce();
+                op(IASTORE);
+                load(ILOAD, CARRY);
+                load(ISTORE, CARRIED);
+            }
+            load(ALOAD, POSITIONS);
+            push(last);
+            load(ALOAD, POSITIONS);
+            push(last);
+            op(IALOAD);
+            op(ICONST_1, IADD);
+            reduce();
+            op(IASTORE);
+        }
+        boolean[] rotated = new boolean[_numRotors];
+        for (int i = _boundary; i < _numRotors; i++) {
+            rotated[i] = _spec.rotated(i, false) != null
+                && _spec.rotated(i, true) != null;
+            load(ALOAD, POSITIONS);
+            push(i);
+            op(IALOAD);
+            load(ALOAD, RINGS);
+            push(i);
+            op(IALOAD);
+            op(ISUB);
+            wrap();
+            if (rotated[i]) {
+                push(_size);
+                op(IMUL);
+            }
+            load(ISTORE, set(i));
+        }
+        table("PLUG_IN", _spec.plugboard(false));
+        for (int i = last; i >= _boundary; i--) {
+            through(i, false, rotated[i]);
+        }
+        load(ALOAD, REFLECTION);
+        load(ILOAD, C);
+        op(IALOAD);
+        load(ISTORE, C);
+        for (int i = _boundary; i <= last; i++) {
+            through(i, true, rotated[i]);
+        }
+        table("PLUG_OUT", _spec.plugboard(true));
+        load(ILOAD, C);
+        op(IRETURN);
+        return _code.toByteArray();
+    }
+
+    /** Emit code that replaces the signal by its image under the table
+     *  PLUGBOARD, held in field NAME, unless PLUGBOARD is the
+     *  identity. */
+    private void table(String name, int[] plugboard) {
+        for (int c = 0; c < _size; c++) {
+            if (plugboard[c] != c) {
+                getStatic(name, plugboard);
+                load(ILOAD, C);
+                op(IALOAD);
+                load(ISTORE, C);
+                return;
+            }
+        }
+    }
+
+    /** Emit code that passes the signal through the rotor in slot I
+     *  (backward iff INVERSE), by its rotated wiring iff ROTATED. */
+    private void through(int i, boolean inverse, boolean rotated) {
+        String name = (inverse ? "B" : "F") + i;
+        if (rotated) {
+            getStatic("R" + name, _spec.rotated(i, inverse));
+            load(ILOAD, set(i));
+            load(ILOAD, C);
+            op(IADD, IALOAD);
+        } else {
+            getStatic(name, _spec.table(i, inverse));
+            load(ILOAD, C);
+            load(ILOAD, set(i));
+            op(IADD);
+            reduce();
+            op(IALOAD);
+            load(ILOAD, set(i));
+            op(ISUB);
+            wrap();
+        }
+        load(ISTORE, C);
+    }
+
+    /** Emit code that leaves 1 on the stack if the rotor in slot J is at
+     *  a notch at the position in local POSITION, and 0 otherwise (as
+     *  Odometer.notch does). */
+    private void notch(int j) {
+        long[] mask = _spec.notchMask(j);
+        if (mask.length == 1) {
+            ldc2(longConstant(mask[0]));
+        } else {
+            getStatic("M" + j, mask);
+            load(ILOAD, POSITION);
+            push(LOG_WORD);
+            op(IUSHR, LALOAD);
+        }
+        load(ILOAD, POSITION);
+        op(LUSHR, L2I, ICONST_1, IAND);
+    }
+
+    /** Emit code that reduces the int on the stack, in the range
+     *  0 .. 2 * size - 1, modulo the alphabet size. */
+    private void reduce() {
+        push(_size);
+        op(ISUB);
+        wrap();
+    }
+
+    /** Emit code that adds the alphabet size to the int on the stack iff
+     *  it is negative. */
+    private void wrap() {
+        op(DUP);
+        push(Integer.SIZE - 1);
+        op(ISHR);
+        push(_size);
+        op(IAND, IADD);
+    }
+
+    /** Return the local holding the setting of the rotor in slot I, or
+     *  that setting times the alphabet size if it is rotated. */
+    private int set(int i) {
+        return FIRST_SET + i - _boundary;
+    }
+
+    /** Emit a getstatic of the field NAME holding VALUE (an int[] or
+     *  long[]), adding the field if it is new. */
+    private void getStatic(String name, Object value) {
+        Integer ref = _fieldsByName.get(name);
+        if (ref == null) {
+            String descriptor = value instanceof int[] ? "[I" : "[J";
+            _fields.add(new int[] { utf8(name), utf8(descriptor) });
+            _descriptors.add(descriptor);
+            _data.add(value);
+            ref = member(FIELDREF, classRef(CLASS_NAME), name, descriptor);
+            _fieldRefs.add(ref);
+            _fieldsByName.put(name, ref);
+        }
+        op(GETSTATIC);
+        u2(ref);
+    }
+
+    /** Emit the instructions OPS, which take no operands. */
+    private void op(int... ops) {
+        for (int op : ops) {
+            _code.write(op);
+        }
+    }
+
+    /** Emit X as two bytes. */
+    private void u2(int x) {
+        _code.write(x >>> Byte.SIZE);
+        _code.write(x);
+    }
+
+    /** Emit the instruction OP (a load or store) on local LOCAL. */
+    private void load(int op, int local) {
+        if (local > MAX_BYTE) {
+            op(WIDE, op);
+            u2(local);
+        } else {
+            op(op, local);
+        }
+    }
+
+    /** Emit code that pushes the int X. */
+    private void push(int x) {
+        if (x >= -1 && x <= ICONST_MAX) {
+            op(ICONST_0 + x);
+        } else if (x == (byte) x) {
+            op(BIPUSH, x & MAX_BYTE);
+        } else if (x == (short) x) {
+            op(SIPUSH);
+            u2(x);
+        } else {
+            ldc(constant(INTEGER, x));
+        }
+    }
+
+    /** Emit code that pushes the constant at INDEX in the pool. */
+    private void ldc(int index) {
+        if (index > MAX_BYTE) {
+            op(LDC_W);
+            u2(index);
+        } else {
+            op(LDC, index);
+        }
+    }
+
+    /** Emit code that pushes the long constant at INDEX in the pool. */
+    private void ldc2(int index) {
+        op(LDC2_W);
+        u2(index);
+    }
+
+    /** Return the index in the pool of an entry with KEY, or -1 if there
+     *  is none yet. */
+    private int find(String key) {
+        Integer index = _entries.get(key);
+        return index == null ? -1 : index;
+    }
+
+    /** Record that the entry about to be written, taking SLOTS slots,
+     *  has KEY, and return its index. */
+    private int add(String key, int slots) {
+        int index = _poolCount;
+        _entries.put(key, index);
+        _poolCount += slots;
+        return index;
+    }
+
+    /** Return the index in the pool of the string S, which must be
+     *  ASCII (and so is its own modified UTF-8). */
+    private int utf8(String s) {
+        int index = find("U" + s);
+        if (index < 0) {
+            index = add("U" + s, 1);
+            _pool.write(UTF8);
+            writeShort(s.length());
+            _pool.writeBytes(s.getBytes(StandardCharsets.US_ASCII));
+        }
+        return index;
+    }
+
+    /** Return the index in the pool of the entry with tag TAG (a class
+     *  or string) referring to the string S. */
+    private int named(int tag, String s) {
+        int name = utf8(s);
+        int index = find(tag + " " + s);
+        if (index < 0) {
+            index = add(tag + " " + s, 1);
+            _pool.write(tag);
+            writeShort(name);
+        }
+        return index;
+    }
+
+    /** Return the index in the pool of the class named NAME. */
+    private int classRef(String name) {
+        return named(CLASS, name);
+    }
+
+    /** Return the index in the pool of the string S. */
+    private int string(String s) {
+        return named(STRING, s);
+    }
+
+    /** Return the index in the pool of the member NAME, with descriptor
+     *  DESCRIPTOR, of the class at index OWNER, as a TAG (a field or
+     *  method reference). */
+    private int member(int tag, int owner, String name, String descriptor) {
+        int nameIndex = utf8(name), type = utf8(descriptor);
+        String key = "N" + name + " " + descriptor;
+        int nameAndType = find(key);
+        if (nameAndType < 0) {
+            nameAndType = add(key, 1);
+            _pool.write(NAME_AND_TYPE);
+            writeShort(nameIndex);
+            writeShort(type);
+        }
+        key = tag + " " + owner + " " + nameAndType;
+        int index = find(key);
+        if (index < 0) {
+            index = add(key, 1);
+            _pool.write(tag);
+            writeShort(owner);
+            writeShort(nameAndType);
+        }
+        return index;
+    }
+
+    /** Return the index in the pool of the int X, as an entry with tag
+     *  TAG. */
+    private int constant(int tag, int x) {
+        String key = tag + " " + x;
+        int index = find(key);
+        if (index < 0) {
+            index = add(key, 1);
+            _pool.write(tag);
+            writeInt(x);
+        }
+        return index;
+    }
+
+    /** Return the index in the pool of the long X. */
+    private int longConstant(long x) {
+        String key = "J" + x;
+        int index = find(key);
+        if (index < 0) {
+            index = add(key, 2);
+            _pool.write(LONG);
+            writeInt((int) (x >>> Integer.SIZE));
+            writeInt((int) x);
+        }
+        return index;
+    }
+
+    /** Write X to the pool as two bytes. */
+    private void writeShort(int x) {
+        _pool.write(x >>> Byte.SIZE);
+        _pool.write(x);
+    }
+
+    /** Write X to the pool as four bytes. */
+    private void writeInt(int x) {
+        writeShort(x >>> Short.SIZE);
+        writeShort(x);
+    }
+
+    /** Name of the generated class (before the JVM makes it unique). */
+    private static final String CLASS_NAME = "enigma/CompiledEngine";
+
+    /** Number of random settings, and most keypresses from each, on which
+     *  an engine is checked. */
+    private static final int CHECKED_SETTINGS = 4, MAX_CHECKED_KEYS = 1 << 12;
+
+    /** Longest code of a method. */
+    private static final int MAX_CODE = (1 << Short.SIZE) - 1;
+
+    /** Deepest operand stack of convert, in slots. */
+    private static final int MAX_STACK = 8;
+
+    /** Locals of convert: its parameters, then temporaries, then the
+     *  settings of the rotors under pawls, by slot. */
+    private static final int POSITIONS = 1, RINGS = 2, REFLECTION = 3,
+        C = 4, CARRIED = 5, CARRY = 6, POSITION = 7, FIRST_SET = 8;
+
+    /** Log base 2 of the number of bits in a word of a notch mask. */
+    private static final int LOG_WORD = 6;
+
+    /** Largest unsigned byte. */
+    private static final int MAX_BYTE = 0xff;
+
+    /** Class-file magic number and the version written (Java 11). */
+    private static final int MAGIC = 0xcafebabe, MAJOR_VERSION = 55;
+
+    /** Bytes of a Code attribute besides its code, after its length. */
+    private static final int CODE_OVERHEAD = 12;
+
+    /** Access flags. */
+    private static final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002,
+        ACC_STATIC = 0x0008, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    /** Tags of constant-pool entries. */
+    private static final int UTF8 = 1, INTEGER = 3, LONG = 5, CLASS = 7,
+        STRING = 8, FIELDREF = 9, METHODREF = 10, NAME_AND_TYPE = 12;
+
+    /** Opcodes. */
+    private static final int ICONST_M1 = 2, ICONST_0 = 3, ICONST_1 = 4,
+        ICONST_MAX = 5,
+        BIPUSH = 16, SIPUSH = 17, LDC = 18, LDC_W = 19, LDC2_W = 20,
+        ILOAD = 21, ALOAD = 25, IALOAD = 46, LALOAD = 47, AALOAD = 50,
+        ISTORE = 54, ASTORE = 58, IASTORE = 79, DUP = 89, IADD = 96,
+        ISUB = 100, IMUL = 104, ISHR = 122, IUSHR = 124, LUSHR = 125,
+        IAND = 126, IOR = 128, IXOR = 130, L2I = 136, IRETURN = 172,
+        RETURN = 177, GETSTATIC = 178, PUTSTATIC = 179,
+        INVOKESPECIAL = 183, INVOKESTATIC = 184, CHECKCAST = 192,
+        WIDE = 196;
+
+    /** The spec compiled. */
+    private final MachineSpec _spec;
+
+    /** Size of its alphabet, number of slots, and slot of the leftmost
+     *  rotor under a pawl. */
+    private final int _size, _numRotors, _boundary;
+
+    /** The constant pool, as written so far. */
+    private final ByteArrayOutputStream _pool = new ByteArrayOutputStream();
+
+    /** Indices of the entries of the pool, by key. */
+    private final HashMap<String, Integer> _entries = new HashMap<>();
+
+    /** Index of the next entry of the pool. */
+    private int _poolCount = 1;
+
+    /** Code of the method being generated. */
+    private final ByteArrayOutputStream _code = new ByteArrayOutputStream();
+
+    /** Pool indices of the name and descriptor of each field, the
+     *  descriptors themselves, and the references to the fields. */
+    private final ArrayList<int[]> _fields = new ArrayList<>();
+    private final ArrayList<String> _descriptors = new ArrayList<>();
+    private final ArrayList<Integer> _fieldRefs = new ArrayList<>();
+
+    /** References to the fields, by name. */
+    private final HashMap<String, Integer> _fieldsByName = new HashMap<>();
+
+    /** Values of the fields, in order: the class data. */
+    private final ArrayList<Object> _data = new ArrayList<>();
+}
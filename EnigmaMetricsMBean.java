@@ -0,0 +1,60 @@
+package enigma;
+
+/** The management interface of the metrics of the simulator (see
+ *  Metrics), registered as enigma:type=Metrics.  Durations are in
+ *  microseconds.
+ *  @author Manavjot Singh
+ */
+public interface EnigmaMetricsMBean {
+
+    /** Return the number of message characters converted. */
+    long getCharactersConverted();
+
+    /** Return the number of message lines converted. */
+    long getMessagesProcessed();
+
+    /** Return the number of setting lines applied. */
+    long getSetupsApplied();
+
+    /** Return the mean time to convert a message line. */
+    double getConvertMeanMicros();
+
+    /** Return the 99th percentile time to convert a message line. */
+    long getConvertP99Micros();
+
+    /** Return the longest time to convert a message line. */
+    long getConvertMaxMicros();
+
+    /** Return the mean time to apply a setting line. */
+    double getSetUpMeanMicros();
+
+    /** Return the 99th percentile time to apply a setting line. */
+    long getSetUpP99Micros();
+
+    /** Return the longest time to apply a setting line. */
+    long getSetUpMaxMicros();
+
+    /** Return the mean time to read a configuration file. */
+    double getReadConfigMeanMicros();
+
+    /** Return the longest time to read a configuration file. */
+    long getReadConfigMaxMicros();
+
+    /** Return the number of bytes of rotated rotor wirings built (see
+     *  RotatedTables). */
+    long getRotatedTableBytes();
+
+    /** Return the most bytes of rotated rotor wirings that may be
+     *  built. */
+    long getRotatedTableLimit();
+
+    /** Return the number of keypresses found in memos of substitutions
+     *  (see PositionCache). */
+    long getMemoHits();
+
+    /** Return the number of keypresses not found in such memos. */
+    long getMemoMisses();
+
+    /** Reset all counts and durations to zero. */
+    void reset();
+}
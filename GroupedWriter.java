@@ -0,0 +1,135 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** Writes lines of converted characters in groups of five separated by
+ *  blanks (the last group of a line may have fewer), through a reusable
+ *  buffer.
+ *  @author Manavjot Singh
+ */
+class GroupedWriter implements Appendable {
+
+    /** A writer of grouped lines to OUT. */
+    GroupedWriter(Writer out) {
+        _out = out;
+        _buf = new char[BUFFER_SIZE];
+    }
+
+    @Override
+    public GroupedWriter append(char c) {
+        if (_size + 2 > _buf.length) {
+            flushBuffer();
+        }
+        if (_column > 0 && _column % GROUP == 0) {
+            _buf[_size++] = ' ';
+        }
+        _buf[_size++] = c;
+        _column += 1;
+        return this;
+    }
+
+    @Override
+    public GroupedWriter append(CharSequence chars) {
+        return append(chars, 0, chars.length());
+    }
+
+    @Override
+    public GroupedWriter append(CharSequence chars, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = chars.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < end
+                && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                i += 1;
+                appendCodePoint(Character.toCodePoint(c, chars.charAt(i)));
+            } else {
+                append(c);
+            }
+        }
+        return this;
+    }
+
+    /** Append the character with code point CP, which counts as a single
+     *  character of a group even if it takes two chars. */
+    GroupedWriter appendCodePoint(int cp) {
+        if (Character.isBmpCodePoint(cp)) {
+            return append((char) cp);
+        }
+        if (_size + 3 > _buf.length) {
+            flushBuffer();
+        }
+        if (_column > 0 && _column % GROUP == 0) {
+            _buf[_size++] = ' ';
+        }
+        _size += Character.toChars(cp, _buf, _size);
+        _column += 1;
+        return this;
+    }
+
+    /** Append the LEN characters of CHARS starting at OFF to the current
+     *  line. */
+    void write(char[] chars, int off, int len) {
+        for (int i = off, end = off + len; i < end; i++) {
+            append(chars[i]);
+        }
+    }
+
+    /** End the current line. */
+    void endLine() {
+        if (_size == _buf.length) {
+            flushBuffer();
+        }
+        _buf[_size++] = '\n';
+        _column = 0;
+    }
+
+    /** Write out everything buffered so far. */
+    void flush() {
+        flushBuffer();
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Flush and close the underlying writer. */
+    void close() {
+        flushBuffer();
+        try {
+            _out.close();
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Hand the contents of the buffer to the underlying writer. */
+    private void flushBuffer() {
+        try {
+            _out.write(_buf, 0, _size);
+            _size = 0;
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Number of characters in a group. */
+    static final int GROUP = 5;
+
+    /** Size of the output buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Destination of the output. */
+    private final Writer _out;
+
+    /** Output not yet handed to _out, in its first _size characters. */
+    private final char[] _buf;
+
+    /** Number of characters in _buf. */
+    private int _size;
+
+    /** Number of converted characters written to the current line. */
+    private long _column;
+}
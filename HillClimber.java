@@ -0,0 +1,495 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only attack on a machine's key.  Every rotor order and
+ *  position is first tried with all rings at the first character and no
+ *  plugboard, scoring each trial decryption by its index of coincidence
+ *  (which is higher the less uniform its letter counts are), and the
+ *  best few keys are kept.  From each of these in turn (a restart), the
+ *  rings of the two rightmost rotors and then the plugboard are improved
+ *  a step at a time while the score rises, finishing with quadgram scores
+ *  if a table of them is given.  The restarts run in parallel.
+ *
+ *  A trial decryption passes the ciphertext, as alphabet indices, through
+ *  a MachineSpec of the rotors alone, applying the plugboard from a table
+ *  on either side, so that no objects are allocated per trial.
+ *  @author Manavjot Singh
+ */
+class HillClimber {
+
+    /** Search for the key of the machine configured by ARGS[0] under which
+     *  the ciphertext in the file named ARGS[1] reads best, scoring by
+     *  the quadgram counts in the file named ARGS[2], if given.  Prints
+     *  the key as a setting line followed by the decryption, and a
+     *  summary on the standard error.  The number of restarts is given by
+     *  the system property enigma.climb.restarts. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 3) {
+                throw error("Usage: java enigma.HillClimber CONFIG "
+                            + "CIPHERTEXT [QUADGRAMS]");
+            }
+            String ciphertext;
+            try {
+                ciphertext = new String(Files.readAllBytes(Paths.get(args[1])),
+                                        Charset.defaultCharset());
+            } catch (IOException excp) {
+                throw error("could not open %s", args[1]);
+            }
+            Machine machine = Main.loadMachine(args[0]);
+            HillClimber climber = new HillClimber(machine, ciphertext);
+            if (args.length == 3) {
+                climber.setQuadgrams(Quadgrams.read(args[2],
+                                                    machine.alphabet()));
+            }
+            climber.setRestarts(Integer.getInteger("enigma.climb.restarts",
+                                                   DEFAULT_RESTARTS));
+            long start = System.nanoTime();
+            Solution best = climber.solve(ForkJoinPool.commonPool());
+            double secs = (System.nanoTime() - start) * 1e-9;
+            System.out.println(best);
+            String plain = best.plaintext();
+            for (int i = 0; i < plain.length(); i += GROUP) {
+                System.out.print(plain.substring(i, Math.min(i + GROUP,
+                                                             plain.length())));
+                System.out.print(i + GROUP < plain.length() ? ' ' : '\n');
+            }
+            System.err.printf("%d trials in %.1f s (%.0f trials/s)%n",
+                              climber.trials(), secs,
+                              climber.trials() / secs);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** An attack on CIPHERTEXT (whitespace ignored) as enciphered by
+     *  MACHINE with some choice of its available rotors. */
+    HillClimber(Machine machine, String ciphertext) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _cipher = Machine.indices(_alphabet, ciphertext);
+        if (_cipher.length < 2) {
+            throw error("ciphertext too short");
+        }
+        _space = new KeySpace(machine);
+        if (_space.orders() == 0) {
+            throw error("no rotors fit the machine");
+        }
+    }
+
+    /** Finish each restart by scoring with QUADGRAMS, or by index of
+     *  coincidence alone if null. */
+    void setQuadgrams(Quadgrams quadgrams) {
+        _quadgrams = quadgrams;
+    }
+
+    /** Climb from the best RESTARTS keys of the first stage. */
+    void setRestarts(int restarts) {
+        if (restarts <= 0) {
+            throw error("number of restarts must be positive");
+        }
+        _restarts = restarts;
+    }
+
+    /** Return the number of trial decryptions made. */
+    long trials() {
+        return _trials.sum();
+    }
+
+    /** Return the best key found by a search on POOL. */
+    Solution solve(ForkJoinPool pool) {
+        _candidates.clear();
+        pool.invoke(new Search(0, _space.firstRingKeys()));
+        List<Candidate> best = new ArrayList<>(_candidates);
+        best.sort(Comparator.comparingDouble((Candidate c) -> -c._score)
+                  .thenComparingLong(c -> c._key));
+        List<Climb> climbs = new ArrayList<>();
+        for (int i = 0; i < Math.min(_restarts, best.size()); i++) {
+            climbs.add(new Climb(best.get(i)._key));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(climbs);
+            }
+        });
+        Solution result = null;
+        for (Climb climb : climbs) {
+            if (result == null || climb._result._score > result._score) {
+                result = climb._result;
+            }
+        }
+        return result;
+    }
+
+    /** A key found by the search: rotors, positions, rings and plugboard,
+     *  with its score and the decryption it gives. */
+    static final class Solution {
+
+        /** A key with the rotors named ROTORS at the positions and rings
+         *  given by the characters of POSITIONS and RINGS, with plugboard
+         *  connections PLUGBOARD, that decrypts the ciphertext as
+         *  PLAINTEXT with score SCORE. */
+        Solution(String[] rotors, String positions, String rings,
+                 String plugboard, String plaintext, double score) {
+            _rotors = rotors;
+            _positions = positions;
+            _rings = rings;
+            _plugboard = plugboard;
+            _plaintext = plaintext;
+            _score = score;
+        }
+
+        /** Return the names of my rotors, by slot. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return the characters showing in the windows at my key. */
+        String positions() {
+            return _positions;
+        }
+
+        /** Return my ring settings. */
+        String rings() {
+            return _rings;
+        }
+
+        /** Return my plugboard connections, in cycle notation. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the decryption of the ciphertext under me. */
+        String plaintext() {
+            return _plaintext;
+        }
+
+        /** Return my score (higher is better). */
+        double score() {
+            return _score;
+        }
+
+        /** Return me as a setting line. */
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _rotors) + " " + _positions + " "
+                + _rings + (_plugboard.isEmpty() ? "" : " " + _plugboard);
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+        /** My positions and rings. */
+        private final String _positions, _rings;
+        /** My plugboard connections. */
+        private final String _plugboard;
+        /** Decryption of the ciphertext. */
+        private final String _plaintext;
+        /** Score of _plaintext. */
+        private final double _score;
+    }
+
+    /** A key kept from the first stage, with its score. */
+    private static final class Candidate {
+
+        /** Key number KEY with score SCORE. */
+        Candidate(long key, double score) {
+            _key = key;
+            _score = score;
+        }
+
+        /** Key number. */
+        private final long _key;
+        /** Index of coincidence of its decryption. */
+        private final double _score;
+    }
+
+    /** The first stage of the search over a range of the keys with every
+     *  ring at the first character, split among threads. */
+    private class Search extends RecursiveAction {
+
+        /** A search of the LOth .. (HI-1)th keys with every ring at the
+         *  first character (see KeySpace.firstRingKey). */
+        Search(long lo, long hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > GRAIN) {
+                long mid = _lo + (_hi - _lo) / 2;
+                invokeAll(new Search(_lo, mid), new Search(mid, _hi));
+                return;
+            }
+            BestKeys best = new BestKeys(_restarts);
+            Trial trial = new Trial();
+            for (long n = _lo; n < _hi; n++) {
+                long key = _space.firstRingKey(n);
+                if (!trial.setKey(key)) {
+                    continue;
+                }
+                trial.decrypt();
+                best.offer(key, trial.coincidence());
+            }
+            for (int i = 0; i < best.size(); i++) {
+                _candidates.add(new Candidate(best.key(i), best.score(i)));
+            }
+            _trials.add(trial._count);
+        }
+
+        /** Range of keys, numbered among those with every ring at the
+         *  first character. */
+        private final long _lo, _hi;
+    }
+
+    /** The second stage of the search from one key. */
+    private class Climb extends RecursiveAction {
+
+        /** A climb from key number KEY. */
+        Climb(long key) {
+            _key = key;
+        }
+
+        @Override
+        protected void compute() {
+            Trial trial = new Trial();
+            trial.setKey(_key);
+            trial.climbRings(false);
+            trial.climbPlugboard(false);
+            if (_quadgrams != null) {
+                trial.climbPlugboard(true);
+                trial.climbRings(true);
+            }
+            _result = trial.solution(_quadgrams != null);
+            _trials.add(trial._count);
+        }
+
+        /** Starting key. */
+        private final long _key;
+        /** Best key found. */
+        private Solution _result;
+    }
+
+    /** The working storage of one thread of the search: a key and its
+     *  trial decryption. */
+    private class Trial {
+
+        /** Set my key to key number KEY of _space, with no plugboard,
+         *  and return true, or return false if KEY places a reflector at a
+         *  position the machine disallows. */
+        boolean setKey(long key) {
+            int order = _space.order(key);
+            if (order != _order) {
+                _order = order;
+                _rotors = _space.rotors(order);
+                _spec = _space.spec(order);
+                _start = _space.state();
+                _state = _space.state();
+            }
+            if (!_space.setUp(key, _start)) {
+                return false;
+            }
+            for (int c = 0; c < _size; c++) {
+                _plug[c] = c;
+            }
+            return true;
+        }
+
+        /** Decrypt the ciphertext under my key into _plain. */
+        void decrypt() {
+            _spec.reflection(_start);
+            _state.copyFrom(_start);
+            for (int i = 0; i < _cipher.length; i++) {
+                _plain[i] = _plug[_spec.convert(_state, _plug[_cipher[i]])];
+            }
+            _count += 1;
+        }
+
+        /** Return the index of coincidence of _plain. */
+        double coincidence() {
+            return _coincidence.score(_plain, _plain.length);
+        }
+
+        /** Return the score of my key, by quadgrams iff QUAD. */
+        double score(boolean quad) {
+            decrypt();
+            return quad ? _quadgrams.score(_plain, _plain.length)
+                : coincidence();
+        }
+
+        /** Improve the rings of the two rightmost rotors (those that
+         *  turn their left neighbours over within a message) one at a
+         *  time, keeping their settings, scoring by quadgrams iff QUAD.
+         *  Since the first stage finds the left neighbour's setting for
+         *  the wrong turnover, that is tried one step either way too. */
+        void climbRings(boolean quad) {
+            int m = _machine.numRotors();
+            int from = Math.max(m - 2, m - _machine.numPawls());
+            for (int i = m - 1; i >= from; i--) {
+                boolean shift = !_rotors[i - 1].reflecting();
+                int left = _start.setting(i - 1);
+                int ring = _start.ring(i), best = ring, bestShift = 0;
+                double bestScore = score(quad);
+                for (int r = 0; r < _size; r++) {
+                    for (int d = shift ? -1 : 0; d <= (shift ? 1 : 0); d++) {
+                        if (r == ring && d == 0) {
+                            continue;
+                        }
+                        _start.setRing(i, r);
+                        _start.set(i - 1, left + d);
+                        double score = score(quad);
+                        if (score > bestScore) {
+                            best = r;
+                            bestShift = d;
+                            bestScore = score;
+                        }
+                    }
+                }
+                _start.setRing(i, best);
+                _start.set(i - 1, left + bestShift);
+            }
+        }
+
+        /** Improve the plugboard by connecting, reconnecting and
+         *  disconnecting pairs of characters while any such change raises
+         *  the score, scoring by quadgrams iff QUAD. */
+        void climbPlugboard(boolean quad) {
+            double bestScore = score(quad);
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int u = 0; u < _size; u++) {
+                    for (int v = u + 1; v < _size; v++) {
+                        System.arraycopy(_plug, 0, _saved, 0, _size);
+                        swap(u, v);
+                        double score = score(quad);
+                        if (score > bestScore) {
+                            bestScore = score;
+                            improved = true;
+                        } else {
+                            System.arraycopy(_saved, 0, _plug, 0, _size);
+                        }
+                    }
+                }
+            }
+        }
+
+        /** Disconnect U and V if they are connected to each other, and
+         *  otherwise disconnect them from their partners and connect them
+         *  to each other. */
+        private void swap(int u, int v) {
+            if (_plug[u] == v) {
+                _plug[u] = u;
+                _plug[v] = v;
+            } else {
+                _plug[_plug[u]] = _plug[u];
+                _plug[_plug[v]] = _plug[v];
+                _plug[u] = v;
+                _plug[v] = u;
+            }
+        }
+
+        /** Return my key as a Solution, scored by quadgrams iff QUAD. */
+        Solution solution(boolean quad) {
+            double score = score(quad);
+            int m = _rotors.length;
+            String[] names = new String[m];
+            char[] positions = new char[m - 1], rings = new char[m - 1];
+            for (int i = 0; i < m; i++) {
+                names[i] = _rotors[i].name();
+                if (i > 0) {
+                    positions[i - 1] = _alphabet.toChar(_start.position(i));
+                    rings[i - 1] = _alphabet.toChar(_start.ring(i));
+                }
+            }
+            StringBuilder plugboard = new StringBuilder();
+            for (int u = 0; u < _size; u++) {
+                if (_plug[u] > u) {
+                    if (plugboard.length() > 0) {
+                        plugboard.append(' ');
+                    }
+                    plugboard.append('(').append(_alphabet.toChar(u))
+                        .append(_alphabet.toChar(_plug[u])).append(')');
+                }
+            }
+            char[] plain = new char[_plain.length];
+            for (int i = 0; i < plain.length; i++) {
+                plain[i] = _alphabet.toChar(_plain[i]);
+            }
+            return new Solution(names, new String(positions),
+                                new String(rings), plugboard.toString(),
+                                new String(plain), score);
+        }
+
+        /** Order whose spec and states are below, or -1. */
+        private int _order = -1;
+        /** Rotors of _order, by slot. */
+        private Rotor[] _rotors;
+        /** Wiring of _order, without a plugboard. */
+        private MachineSpec _spec;
+        /** Settings of my key, and those of a trial decryption. */
+        private MachineState _start, _state;
+        /** Plugboard of my key as a table, and a saved copy of it. */
+        private final int[] _plug = new int[_size], _saved = new int[_size];
+        /** Decryption of the ciphertext under my key. */
+        private final int[] _plain = new int[_cipher.length];
+        /** Scorer of _plain by index of coincidence. */
+        private final Coincidence _coincidence = new Coincidence(_size);
+        /** Number of trial decryptions made. */
+        private long _count;
+    }
+
+    /** Default number of restarts. */
+    static final int DEFAULT_RESTARTS = 8;
+
+    /** Largest number of keys searched as a single task. */
+    private static final int GRAIN = 1 << 12;
+
+    /** Number of characters in a group of printed plaintext. */
+    private static final int GROUP = 5;
+
+    /** The machine whose rotors are searched. */
+    private final Machine _machine;
+
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** The keys of _machine. */
+    private final KeySpace _space;
+
+    /** Quadgram scores, or null. */
+    private Quadgrams _quadgrams;
+
+    /** Number of keys climbed from. */
+    private int _restarts = DEFAULT_RESTARTS;
+
+    /** Best keys of each task of the first stage. */
+    private final ConcurrentLinkedQueue<Candidate> _candidates =
+        new ConcurrentLinkedQueue<>();
+
+    /** Number of trial decryptions made. */
+    private final LongAdder _trials = new LongAdder();
+}
@@ -0,0 +1,82 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the HillClimber and Quadgrams
+ *  classes.
+ *  @author
+ */
+public class HillClimberTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Plaintext of the test message. */
+    private static final String PLAIN =
+        "THEWEATHERINTHEBAYOFBISCAYWILLBECLEARTHROUGHOUTTHEDAYWITHLIGHT"
+        + "WINDSFROMTHENORTHWESTANDAGOODVISIBILITYATSEATHECONVOYSHOULD"
+        + "EXPECTTOREACHTHEHARBOURBEFORENIGHTFALLANDTHEESCORTSWILLTHEN"
+        + "RETURNTOTHEIRSTATIONSINTHEWESTERNAPPROACHESTOAWAITFURTHER"
+        + "ORDERSFROMTHEADMIRALTYWHICHAREEXPECTEDBEFOREDAWNTOMORROW";
+
+    /** Return the indices in UPPER of the characters of TEXT. */
+    private static int[] indices(String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = UPPER.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void quadgramsPreferSample() {
+        Quadgrams quads = quadgrams(PLAIN);
+        int[] plain = indices(PLAIN);
+        int[] scrambled = indices(PLAIN.substring(1) + PLAIN.charAt(0));
+        for (int i = 0; i + 1 < scrambled.length; i += 2) {
+            int c = scrambled[i];
+            scrambled[i] = scrambled[i + 1];
+            scrambled[i + 1] = c;
+        }
+        assertTrue(quads.score(plain, plain.length)
+                   > quads.score(scrambled, scrambled.length));
+        assertEquals(0.0, quads.score(plain, 3), 0.0);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsBadQuadgramLine() {
+        new Quadgrams(UPPER, new StringReader("TION 10\nTHE 5\n"));
+    }
+
+    @Test
+    public void recoversKey() {
+        Machine M = smallMachine(4);
+        M.insertRotors(new String[] {"B", "Beta", "II", "I"});
+        M.setRing("AAC");
+        M.setRotors("DQX");
+        M.setPlugboard(new Permutation("(AW) (HR) (KS)", UPPER));
+        String cipher = M.convert(PLAIN);
+        HillClimber climber = new HillClimber(smallMachine(4), cipher);
+        climber.setQuadgrams(quadgrams(PLAIN));
+        HillClimber.Solution best =
+            climber.solve(ForkJoinPool.commonPool());
+        assertEquals(PLAIN, best.plaintext());
+        assertEquals("B Beta II I", String.join(" ", best.rotors()));
+        assertEquals("(AW) (HR) (KS)", best.plugboard());
+        assertTrue(climber.trials() >= 6 * 26 * 26 * 26);
+    }
+
+}
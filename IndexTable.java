@@ -0,0 +1,75 @@
+package enigma;
+
+/** A fixed table of indices into an alphabet, stored as compactly as the
+ *  alphabet's size allows: a byte per entry for alphabets of at most 256
+ *  symbols, a short for those of at most 65536, and an int otherwise.
+ *  Permutations keep their mappings in IndexTables, so that a large
+ *  library of rotors over a small alphabet takes little memory; the
+ *  tables that conversion runs on (in MachineSpec) are plain int arrays
+ *  built from them.
+ *  @author Manavjot Singh
+ */
+final class IndexTable {
+
+    /** A table holding VALUES, each in the range 0 .. SIZE-1. */
+    IndexTable(int[] values, int size) {
+        _length = values.length;
+        if (size <= BYTE_LIMIT) {
+            _bytes = new byte[_length];
+            for (int i = 0; i < _length; i++) {
+                _bytes[i] = (byte) values[i];
+            }
+        } else if (size <= SHORT_LIMIT) {
+            _shorts = new short[_length];
+            for (int i = 0; i < _length; i++) {
+                _shorts[i] = (short) values[i];
+            }
+        } else {
+            _ints = values.clone();
+        }
+    }
+
+    /** Return the number of bytes in each of my entries. */
+    int width() {
+        return _bytes != null ? 1 : _shorts != null ? 2 : 4;
+    }
+
+    /** Return the number of my entries. */
+    int length() {
+        return _length;
+    }
+
+    /** Return entry I. */
+    int get(int i) {
+        if (_bytes != null) {
+            return _bytes[i] & BYTE_MASK;
+        } else if (_shorts != null) {
+            return _shorts[i] & SHORT_MASK;
+        } else {
+            return _ints[i];
+        }
+    }
+
+    /** Return my entries as a new array. */
+    int[] toArray() {
+        int[] result = new int[_length];
+        for (int i = 0; i < _length; i++) {
+            result[i] = get(i);
+        }
+        return result;
+    }
+
+    /** Largest alphabets whose indices fit in a byte and in a short. */
+    static final int BYTE_LIMIT = 1 << 8, SHORT_LIMIT = 1 << 16;
+
+    /** Masks of the bits of a byte and a short. */
+    private static final int BYTE_MASK = 0xff, SHORT_MASK = 0xffff;
+
+    /** Number of entries. */
+    private final int _length;
+
+    /** Entries, in exactly one of these. */
+    private byte[] _bytes;
+    private short[] _shorts;
+    private int[] _ints;
+}
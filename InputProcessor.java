@@ -0,0 +1,66 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Walks the lines of an input file, telling settings from messages and
+ *  deciding which blank lines are echoed.  Lines are handled one at a
+ *  time, except that a run of lines holding only whitespace is gathered
+ *  up until the next line that does not, since its treatment depends on
+ *  that line: before a message, each is an empty message; before a
+ *  setting, each must be empty and is echoed as such; and at the end of
+ *  the input, only those up to the first that is not a lone newline are
+ *  echoed.  The first line that is not blank must be a setting.
+ *  @author Manavjot Singh
+ */
+abstract class InputProcessor {
+
+    /** Process all the lines of IN. */
+    void run(LineSource in) {
+        boolean first = true;
+        while (true) {
+            int blanks = 0, empties = 0, newlines = 0;
+            boolean found = false;
+            while (in.next()) {
+                if (!in.blank()) {
+                    found = true;
+                    break;
+                }
+                if (in.length() == 0 && empties == blanks) {
+                    empties += 1;
+                }
+                if (in.endsWithNewline() && in.length() == 0
+                    && newlines == blanks) {
+                    newlines += 1;
+                }
+                blanks += 1;
+            }
+            if (!found) {
+                if (first) {
+                    throw error("no setting line in input");
+                }
+                blankLines(newlines);
+                return;
+            } else if (first || in.isSetting()) {
+                blankLines(empties);
+                if (empties < blanks) {
+                    throw new EnigmaException("Bad Setting Description");
+                }
+                setting(in.toString());
+                first = false;
+            } else {
+                blankLines(blanks);
+                message();
+            }
+        }
+    }
+
+    /** Apply the setting line SETTINGS. */
+    abstract void setting(String settings);
+
+    /** Convert and output the current line of the input, which is a
+     *  message. */
+    abstract void message();
+
+    /** Output N empty lines. */
+    abstract void blankLines(int n);
+}
@@ -0,0 +1,191 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+/** The keys of a machine, numbered so that they can be enumerated and
+ *  divided among threads.  A key is an assignment of the machine's
+ *  available rotors to its slots (an order), together with the ring
+ *  settings and settings of its rotors; the plugboard is not part of a
+ *  key.  Keys that cannot differ in how they convert are counted once:
+ *  only the rings of the rotors under pawls that carry their left
+ *  neighbours (all but the leftmost of them) are enumerated, since the
+ *  ring of any other rotor affects nothing that its setting does not.
+ *
+ *  A key is set up directly on a MachineState of its order's MachineSpec,
+ *  so that no Machine need be configured to try it.
+ *  @author Manavjot Singh
+ */
+final class KeySpace {
+
+    /** The keys of MACHINE, whose available rotors are used. */
+    KeySpace(Machine machine) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _numRotors = machine.numRotors();
+        _numPawls = machine.numPawls();
+        _orders = Bombe.orders(machine);
+        _perRings = power(_numRotors - 1);
+        _perOrder = Math.multiplyExact(power(Math.max(_numPawls - 1, 0)),
+                                       _perRings);
+        _keys = Math.multiplyExact(_perOrder, (long) _orders.size());
+    }
+
+    /** Return _size to the power N. */
+    private long power(int n) {
+        long result = 1;
+        for (int i = 0; i < n; i++) {
+            result = Math.multiplyExact(result, (long) _size);
+        }
+        return result;
+    }
+
+    /** Return the alphabet of my keys. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of keys. */
+    long size() {
+        return _keys;
+    }
+
+    /** Return the number of orders. */
+    int orders() {
+        return _orders.size();
+    }
+
+    /** Return the number of keys with every ring at the first
+     *  character. */
+    long firstRingKeys() {
+        return Math.multiplyExact(_perRings, (long) _orders.size());
+    }
+
+    /** Return the number of the Nth (numbering from 0, in key order) of
+     *  the keys with every ring at the first character. */
+    long firstRingKey(long n) {
+        return n / _perRings * _perOrder + n % _perRings;
+    }
+
+    /** Return the order of key number KEY. */
+    int order(long key) {
+        return (int) (key / _perOrder);
+    }
+
+    /** Return the rotors of order number ORDER, by slot. */
+    Rotor[] rotors(int order) {
+        return _orders.get(order).clone();
+    }
+
+    /** Return a MachineSpec, without a plugboard, of the rotors of order
+     *  number ORDER. */
+    MachineSpec spec(int order) {
+        return new MachineSpec(_alphabet, _numPawls, _orders.get(order),
+                               null);
+    }
+
+    /** Return a new MachineState for a spec of mine. */
+    MachineState state() {
+        return new MachineState(_numRotors, _size);
+    }
+
+    /** Set STATE (of the spec of order(KEY)) to the rings and settings
+     *  of key number KEY, and return true, or return false if KEY gives a
+     *  reflector in a non-reflector slot a non-zero setting, which
+     *  Machine disallows. */
+    boolean setUp(long key, MachineState state) {
+        Rotor[] rotors = _orders.get(order(key));
+        long rest = key % _perOrder;
+        long rings = rest / _perRings, settings = rest % _perRings;
+        for (int i = _numRotors - 1; i >= 1; i--) {
+            int set = (int) (settings % _size);
+            settings /= _size;
+            if (rotors[i].reflecting() && set != 0) {
+                return false;
+            }
+            int ring = 0;
+            if (i > _numRotors - _numPawls) {
+                ring = (int) (rings % _size);
+                rings /= _size;
+            }
+            state.setRing(i, ring);
+            state.set(i, set);
+        }
+        return true;
+    }
+
+    /** Return a setting line that sets up a machine to key number KEY,
+     *  with no plugboard. */
+    String settingLine(long key) {
+        Rotor[] rotors = _orders.get(order(key));
+        MachineState state = state();
+        setUp(key, state);
+        StringBuilder names = new StringBuilder("*");
+        char[] positions = new char[_numRotors - 1];
+        char[] rings = new char[_numRotors - 1];
+        for (int i = 0; i < _numRotors; i++) {
+            names.append(' ').append(rotors[i].name());
+            if (i > 0) {
+                positions[i - 1] = _alphabet.toChar(state.position(i));
+                rings[i - 1] = _alphabet.toChar(state.ring(i));
+            }
+        }
+        return names.append(' ').append(positions).append(' ')
+            .append(rings).toString();
+    }
+
+    /** Add to DIGEST all that determines my keys and how they convert:
+     *  my alphabet, numbers of slots and pawls, and the names, kinds,
+     *  wiring and notches of the rotors of each of my orders. */
+    void identify(MessageDigest digest) {
+        ByteBuffer bytes = ByteBuffer.allocate(
+            Integer.BYTES * (4 + _size) + _size);
+        bytes.putInt(_size).putInt(_numRotors).putInt(_numPawls)
+            .putInt(_orders.size());
+        for (int i = 0; i < _size; i++) {
+            bytes.putInt(_alphabet.toCodePoint(i));
+        }
+        digest.update(bytes.array(), 0, bytes.position());
+        for (Rotor[] order : _orders) {
+            for (Rotor rotor : order) {
+                byte[] name = rotor.name().getBytes(StandardCharsets.UTF_8);
+                bytes.clear();
+                bytes.putInt(name.length).put((byte) (rotor.rotates() ? 1 : 0))
+                    .put((byte) (rotor.reflecting() ? 1 : 0));
+                digest.update(bytes.array(), 0, bytes.position());
+                digest.update(name);
+                bytes.clear();
+                for (int p = 0; p < _size; p++) {
+                    bytes.putInt(rotor.permutation().permute(p));
+                }
+                for (boolean notch : rotor.notches()) {
+                    bytes.put((byte) (notch ? 1 : 0));
+                }
+                digest.update(bytes.array(), 0, bytes.position());
+            }
+        }
+    }
+
+    /** Common alphabet of the rotors. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Numbers of slots and pawls of the machine. */
+    private final int _numRotors, _numPawls;
+
+    /** All permitted assignments of rotors to slots. */
+    private final List<Rotor[]> _orders;
+
+    /** Number of settings of all the rotors for each choice of rings. */
+    private final long _perRings;
+
+    /** Number of keys for each order. */
+    private final long _perOrder;
+
+    /** Number of keys. */
+    private final long _keys;
+}
@@ -0,0 +1,287 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static enigma.EnigmaException.*;
+
+/** A keystream kept in a memory-mapped file: for one machine started
+ *  from one setting, the substitution the machine makes at each keypress
+ *  from that start, so that messages converted again and again under the
+ *  same settings are converted by indexing into the file rather than by
+ *  driving the machine.  Main uses stores in the directory named by the
+ *  system property enigma.keystream (see Main.openKeystream).
+ *
+ *  A store is named by, and its header holds, its key: a SHA-256 digest
+ *  of everything that determines the keystream, namely the alphabet, the
+ *  wiring and notches of the rotors in their slots, the plugboard, and
+ *  the positions and rings of the rotors at the start.  A store whose
+ *  header does not match is rejected.  After the header come the
+ *  substitutions themselves, one table of a byte or short per index
+ *  for each keypress.  A store holds however many keypresses have been asked
+ *  of it so far and is extended, under a file lock, when a longer
+ *  message arrives; the count in the header is written only after the
+ *  tables it covers, so a store interrupted while growing is merely
+ *  shorter than it might have been.
+ *
+ *  Header (big-endian): magic, version, alphabet size, entry width (all
+ *  ints), the 32-byte digest, and the number of keypresses held (a
+ *  long), padded to HEADER bytes.
+ *  @author Manavjot Singh
+ */
+final class KeystreamStore {
+
+    /** Return the key of the keystream of a machine with wiring SPEC,
+     *  whose digest (see digest) is WIRING, from STATE: the digest of all
+     *  that determines the keystream, in hexadecimal. */
+    static String key(MachineSpec spec, byte[] wiring, MachineState state) {
+        int slots = spec.numRotors();
+        ByteBuffer bytes =
+            ByteBuffer.allocate(wiring.length + 2 * slots * Integer.BYTES);
+        bytes.put(wiring);
+        for (int i = 0; i < slots; i++) {
+            bytes.putInt(state.position(i)).putInt(state.ring(i));
+        }
+        return HexFormat.of().formatHex(sha256(bytes.array()));
+    }
+
+    /** Return the store in DIRECTORY with key KEY (see key) for an
+     *  alphabet of SIZE characters, creating it empty if need be, or null
+     *  if the alphabet is too large to be stored. */
+    static KeystreamStore open(Path directory, String key, int size) {
+        if (size > IndexTable.SHORT_LIMIT) {
+            return null;
+        }
+        byte[] digest = HexFormat.of().parseHex(key);
+        Path file = directory.resolve(key + SUFFIX);
+        if (!Files.exists(file)) {
+            create(file, size, digest);
+        }
+        return new KeystreamStore(file, size, digest);
+    }
+
+    /** Write an empty store for an alphabet of SIZE characters with
+     *  digest DIGEST to FILE, atomically. */
+    private static void create(Path file, int size, byte[] digest) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC).putInt(VERSION).putInt(size)
+            .putInt(width(size)).put(digest).putLong(0);
+        try {
+            Path temp = Files.createTempFile(file.toAbsolutePath().getParent(),
+                                             null, TEMP_SUFFIX);
+            Files.write(temp, header.array());
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            if (!Files.exists(file)) {
+                throw error("could not create keystream %s", file);
+            }
+        }
+    }
+
+    /** The store in FILE for an alphabet of SIZE characters, which must
+     *  have digest DIGEST. */
+    private KeystreamStore(Path file, int size, byte[] digest) {
+        _file = file;
+        _size = size;
+        _width = width(size);
+        _digest = digest;
+        map();
+    }
+
+    /** Map my file, checking its header. */
+    private void map() {
+        try (FileChannel channel = FileChannel.open(_file)) {
+            if (channel.size() < HEADER || channel.size() > MAX_BYTES) {
+                throw error("keystream %s is damaged", _file);
+            }
+            _map = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw error("could not open keystream %s", _file);
+        }
+        byte[] digest = new byte[DIGEST_BYTES];
+        _map.position(DIGEST_AT);
+        _map.get(digest);
+        if (_map.getInt(0) != MAGIC || _map.getInt(4) != VERSION
+            || _map.getInt(8) != _size || _map.getInt(12) != _width
+            || !Arrays.equals(digest, _digest)) {
+            throw error("keystream %s does not match the machine", _file);
+        }
+        _count = _map.getLong(COUNT_AT);
+        if (_count < 0 || HEADER + _count * _size * _width > _map.limit()) {
+            throw error("keystream %s is damaged", _file);
+        }
+    }
+
+    /** Return the number of keypresses I hold. */
+    long count() {
+        return _count;
+    }
+
+    /** Return the most keypresses a store for an alphabet of my size can
+     *  hold. */
+    long capacity() {
+        return (MAX_BYTES - HEADER) / ((long) _size * _width);
+    }
+
+    /** Make me hold at least the first N keypresses, which must not
+     *  exceed capacity(), computing any I lack with a copy of MACHINE,
+     *  whose rotors must have been set to my start (and may since have
+     *  been advanced). */
+    void extend(Machine machine, long n) {
+        if (n <= _count) {
+            return;
+        }
+        long target = Math.min(capacity(), Math.max(n, 2 * _count));
+        try (RandomAccessFile raf = new RandomAccessFile(_file.toFile(), "rw");
+             FileChannel channel = raf.getChannel()) {
+            FileLock lock = channel.lock();
+            try {
+                fill(raf, machine, target);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw error("could not extend keystream %s", _file);
+        }
+        map();
+    }
+
+    /** Make the store open as RAF, which I must have locked, hold the
+     *  first TARGET keypresses, computing any it lacks with a copy of
+     *  MACHINE (as for extend). */
+    private void fill(RandomAccessFile raf, Machine machine, long target)
+        throws IOException {
+        FileChannel channel = raf.getChannel();
+        long count = channel.map(FileChannel.MapMode.READ_ONLY,
+                                 COUNT_AT, Long.BYTES).getLong();
+        if (count >= target) {
+            return;
+        }
+        long tableBytes = (long) _size * _width;
+        raf.setLength(HEADER + target * tableBytes);
+        MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE,
+                                           0, HEADER + target * tableBytes);
+        Machine copy = machine.copy();
+        copy.seek(count);
+        MachineSpec spec = copy.spec();
+        MachineState state = copy.state();
+        ByteBuffer table = ByteBuffer.allocate((int) tableBytes);
+        out.position((int) (HEADER + count * tableBytes));
+        for (long k = count; k < target; k++) {
+            spec.step(state);
+            table.clear();
+            for (int c = 0; c < _size; c++) {
+                if (_width == 1) {
+                    table.put((byte) spec.map(state, c));
+                } else {
+                    table.putChar((char) spec.map(state, c));
+                }
+            }
+            out.put(table.flip());
+        }
+        out.force();
+        out.putLong(COUNT_AT, target);
+        out.force();
+    }
+
+    /** Return the conversion of C (an index) at keypress K (numbering
+     *  from 0), which I must hold. */
+    int convert(long k, int c) {
+        int at = (int) (HEADER + (k * _size + c) * _width);
+        return _width == 1 ? _map.get(at) & BYTE_MASK : _map.getChar(at);
+    }
+
+    /** Return the SHA-256 digest of all that SPEC contributes to a
+     *  keystream: its alphabet, the wiring of its rotors, the notches of
+     *  those under pawls, and its plugboard.  Main computes it once for
+     *  each spec, rather than for every setting line. */
+    static byte[] digest(MachineSpec spec) {
+        Alphabet alphabet = spec.alphabet();
+        int size = alphabet.size(), slots = spec.numRotors();
+        int boundary = slots - spec.numPawls();
+        ByteBuffer bytes = ByteBuffer.allocate(
+            Integer.BYTES * (3 + size * (2 + slots)) + slots * size);
+        bytes.putInt(size).putInt(slots).putInt(spec.numPawls());
+        for (int i = 0; i < size; i++) {
+            bytes.putInt(alphabet.toCodePoint(i));
+        }
+        for (int i = 0; i < slots; i++) {
+            for (int p : spec.table(i, false)) {
+                bytes.putInt(p);
+            }
+            if (i >= boundary) {
+                for (boolean notch : spec.notches(i)) {
+                    bytes.put((byte) (notch ? 1 : 0));
+                }
+            }
+        }
+        for (int p : spec.plugboard(false)) {
+            bytes.putInt(p);
+        }
+        return sha256(Arrays.copyOf(bytes.array(), bytes.position()));
+    }
+
+    /** Return the SHA-256 digest of BYTES. */
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("SHA-256 is not available");
+        }
+    }
+
+    /** Return the number of bytes of an entry of a table over an
+     *  alphabet of SIZE characters. */
+    private static int width(int size) {
+        return size <= IndexTable.BYTE_LIMIT ? 1 : 2;
+    }
+
+    /** First four bytes of a store: "EnK" and 1. */
+    static final int MAGIC = 0x456e4b01;
+
+    /** Version of the format written. */
+    static final int VERSION = 1;
+
+    /** Length of the header, and the offsets in it of the digest and
+     *  the count of keypresses. */
+    private static final int HEADER = 64, DIGEST_AT = 16, COUNT_AT = 48;
+
+    /** Length of the digest. */
+    private static final int DIGEST_BYTES = 32;
+
+    /** Suffixes of the names of stores, and of stores being created. */
+    private static final String SUFFIX = ".eks", TEMP_SUFFIX = ".tmp";
+
+    /** Largest store, which must fit in a single mapping. */
+    private static final long MAX_BYTES = Integer.MAX_VALUE;
+
+    /** Mask of the bits of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** My file. */
+    private final Path _file;
+
+    /** Size of the alphabet, and bytes per table entry. */
+    private final int _size, _width;
+
+    /** The digest of my machine and start. */
+    private final byte[] _digest;
+
+    /** My file, mapped. */
+    private MappedByteBuffer _map;
+
+    /** Number of keypresses held. */
+    private long _count;
+}
@@ -0,0 +1,109 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeystreamStore class.
+ *  @author
+ */
+public class KeystreamStoreTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the naval machine (see MachineTest) set to SETTING with
+     *  plugboard (AQ) (EP). */
+    private static Machine machine(String setting) {
+        Machine M = MachineTest.navalMachine();
+        M.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        M.setRotors(setting);
+        M.setPlugboard(new Permutation("(AQ) (EP)", UPPER));
+        return M;
+    }
+
+    /** Return the key of M's keystream from its current settings. */
+    private static String key(Machine M) {
+        return KeystreamStore.key(M.spec(), KeystreamStore.digest(M.spec()),
+                                  M.state());
+    }
+
+    /** Delete DIR and the files in it. */
+    private static void delete(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void storeMatchesMachine() throws IOException {
+        Path dir = Files.createTempDirectory("keystream");
+        try {
+            Machine M = machine("AXLE");
+            Machine ref = M.copy();
+            KeystreamStore store = KeystreamStore.open(dir, key(M), 26);
+            assertEquals(0, store.count());
+            store.extend(M, 100);
+            assertTrue(store.count() >= 100);
+            store.extend(M, 1000);
+            assertTrue(store.count() >= 1000);
+            for (int k = 0; k < 1000; k++) {
+                int c = (k * 7) % 26;
+                assertEquals(ref.convert(c), store.convert(k, c));
+            }
+            KeystreamStore again = KeystreamStore.open(dir, key(M), 26);
+            assertEquals(store.count(), again.count());
+            assertEquals(store.convert(999, 3), again.convert(999, 3));
+            assertFalse(key(M).equals(key(machine("AXLF"))));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void rejectsMismatchedStore() throws IOException {
+        Path dir = Files.createTempDirectory("keystream");
+        try {
+            Machine M = machine("AXLE");
+            KeystreamStore.open(dir, key(M), 26).extend(M, 10);
+            String other = key(machine("ZZZZ"));
+            Files.copy(dir.resolve(key(M) + ".eks"),
+                       dir.resolve(other + ".eks"));
+            try {
+                KeystreamStore.open(dir, other, 26);
+                fail("mismatched store accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("does not match"));
+            }
+            Path file = dir.resolve(key(M) + ".eks");
+            byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(bytes, 100));
+            try {
+                KeystreamStore.open(dir, key(M), 26);
+                fail("damaged store accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("damaged"));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A histogram of durations in nanoseconds, safe to update from several
+ *  threads at once.  Durations are counted in buckets by their number of
+ *  binary digits, so percentiles are reported to within a factor of 2
+ *  (as the upper bound of their bucket), while the mean and maximum are
+ *  exact.
+ *  @author Manavjot Singh
+ */
+final class LatencyHistogram {
+
+    /** Record a duration of NANOS nanoseconds. */
+    void record(long nanos) {
+        nanos = Math.max(nanos, 0);
+        _buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(nanos));
+        _total.add(nanos);
+        _max.accumulate(nanos);
+    }
+
+    /** Return the number of durations recorded. */
+    long count() {
+        long result = 0;
+        for (int b = 0; b < _buckets.length(); b++) {
+            result += _buckets.get(b);
+        }
+        return result;
+    }
+
+    /** Return the mean duration recorded, in nanoseconds, or 0 if there
+     *  are none. */
+    double mean() {
+        long n = count();
+        return n == 0 ? 0.0 : (double) _total.sum() / n;
+    }
+
+    /** Return the longest duration recorded, in nanoseconds. */
+    long max() {
+        return _max.get();
+    }
+
+    /** Return an upper bound, within a factor of 2, of the duration
+     *  below which the fraction P of the recorded durations fall, in
+     *  nanoseconds, or 0 if there are none. */
+    long percentile(double p) {
+        long n = count(), seen = 0;
+        long rank = (long) Math.ceil(p * n);
+        for (int b = 0; b < _buckets.length(); b++) {
+            seen += _buckets.get(b);
+            if (seen >= rank && seen > 0) {
+                return Math.min(b == 0 ? 0 : (1L << b) - 1, max());
+            }
+        }
+        return 0;
+    }
+
+    /** Forget all durations recorded. */
+    void reset() {
+        for (int b = 0; b < _buckets.length(); b++) {
+            _buckets.set(b, 0);
+        }
+        _total.reset();
+        _max.reset();
+    }
+
+    /** Number of durations with each number of binary digits. */
+    private final AtomicLongArray _buckets = new AtomicLongArray(Long.SIZE);
+
+    /** Sum of the durations. */
+    private final LongAdder _total = new LongAdder();
+
+    /** Longest duration. */
+    private final LongAccumulator _max = new LongAccumulator(Math::max, 0);
+}
@@ -0,0 +1,62 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the LatencyHistogram class.
+ *  @author
+ */
+public class LatencyHistogramTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void emptyHistogram() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.count());
+        assertEquals(0.0, h.mean(), 0.0);
+        assertEquals(0, h.max());
+        assertEquals(0, h.percentile(0.99));
+    }
+
+    @Test
+    public void meanAndMax() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(100);
+        h.record(300);
+        h.record(-5);
+        assertEquals(3, h.count());
+        assertEquals(400.0 / 3, h.mean(), 1e-9);
+        assertEquals(300, h.max());
+        h.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, h.max());
+    }
+
+    @Test
+    public void percentilesBoundDurations() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 99; i++) {
+            h.record(1000);
+        }
+        h.record(1_000_000);
+        long median = h.percentile(0.5);
+        assertTrue(median >= 1000 && median < 2000);
+        long p99 = h.percentile(0.99);
+        assertTrue(p99 >= 1000 && p99 < 2000);
+        assertEquals(1_000_000, h.percentile(1.0));
+    }
+
+    @Test
+    public void resetForgets() {
+        LatencyHistogram h = new LatencyHistogram();
+        h.record(42);
+        h.reset();
+        assertEquals(0, h.count());
+        assertEquals(0, h.max());
+    }
+
+}
@@ -0,0 +1,108 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static enigma.EnigmaException.*;
+
+/** Reads a stream of characters one line at a time into a reusable
+ *  buffer.  Lines end at "\n", "\r\n" or "\r", none of which is included
+ *  in the line.
+ *  @author Manavjot Singh
+ */
+class LineReader extends LineSource {
+
+    /** A reader of lines from IN. */
+    LineReader(Reader in) {
+        _in = in;
+        _buf = new char[BUFFER_SIZE];
+        _line = new char[INITIAL_LINE];
+    }
+
+    @Override
+    boolean next() {
+        _length = 0;
+        _newline = false;
+        while (_pos < _limit || fill()) {
+            char ch = _buf[_pos++];
+            if (ch == '\n') {
+                _newline = true;
+                return true;
+            } else if (ch == '\r') {
+                if ((_pos < _limit || fill()) && _buf[_pos] == '\n') {
+                    _pos += 1;
+                }
+                return true;
+            }
+            if (_length == _line.length) {
+                char[] line = new char[_line.length * 2];
+                System.arraycopy(_line, 0, line, 0, _length);
+                _line = line;
+            }
+            _line[_length++] = ch;
+        }
+        return _length > 0;
+    }
+
+    /** Refill the input buffer, returning false at end of input. */
+    private boolean fill() {
+        try {
+            int n = _in.read(_buf, 0, _buf.length);
+            _pos = 0;
+            _limit = Math.max(n, 0);
+            return n > 0;
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+    }
+
+    /** Return the buffer holding the current line in its first length()
+     *  characters.  It is overwritten by the next call to next(). */
+    char[] buffer() {
+        return _line;
+    }
+
+    @Override
+    int length() {
+        return _length;
+    }
+
+    @Override
+    char charAt(int k) {
+        return _line[k];
+    }
+
+    @Override
+    boolean endsWithNewline() {
+        return _newline;
+    }
+
+    @Override
+    public String toString() {
+        return new String(_line, 0, _length);
+    }
+
+    /** Size of the input buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Initial size of the line buffer. */
+    private static final int INITIAL_LINE = 1 << 10;
+
+    /** Source of characters. */
+    private final Reader _in;
+
+    /** Input buffer, holding unread characters in _pos .. _limit-1. */
+    private final char[] _buf;
+
+    /** Bounds of the unread part of _buf. */
+    private int _pos, _limit;
+
+    /** The current line. */
+    private char[] _line;
+
+    /** Length of the current line. */
+    private int _length;
+
+    /** True iff the current line ended with a lone newline. */
+    private boolean _newline;
+}
@@ -0,0 +1,47 @@
+package enigma;
+
+/** A source of input lines, read one at a time, that can classify the
+ *  current line as blank or as a setting line.
+ *  @author Manavjot Singh
+ */
+abstract class LineSource {
+
+    /** Advance to the next line, returning false if there is none. */
+    abstract boolean next();
+
+    /** Return the length of the current line. */
+    abstract int length();
+
+    /** Return character K of the current line. */
+    abstract char charAt(int k);
+
+    /** Return true iff the current line ended with a lone "\n". */
+    abstract boolean endsWithNewline();
+
+    /** Return true iff the current line contains only whitespace. */
+    boolean blank() {
+        return firstToken() == length();
+    }
+
+    /** Return true iff the first whitespace-delimited token of the current
+     *  line is "*", which marks a setting line. */
+    boolean isSetting() {
+        int k = firstToken();
+        return k < length() && charAt(k) == '*'
+            && (k + 1 == length() || Character.isWhitespace(charAt(k + 1)));
+    }
+
+    /** Return the index of the first character of the current line that
+     *  is not whitespace, or length() if there is none. */
+    private int firstToken() {
+        int k = 0;
+        while (k < length() && Character.isWhitespace(charAt(k))) {
+            k += 1;
+        }
+        return k;
+    }
+
+    /** Return the current line. */
+    @Override
+    public abstract String toString();
+}
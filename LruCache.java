@@ -0,0 +1,32 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A map that holds at most a fixed number of entries, evicting the
+ *  least recently used (by get or put) when a put would exceed it.  It
+ *  is not safe for concurrent use.
+ *  @author Manavjot Singh
+ */
+final class LruCache<K, V> extends LinkedHashMap<K, V> {
+
+    /** An empty cache of at most CAPACITY entries. */
+    LruCache(int capacity) {
+        super(INITIAL_CAPACITY, LOAD_FACTOR, true);
+        _capacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > _capacity;
+    }
+
+    /** Initial capacity of the table. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Load factor of the table. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** Largest number of entries. */
+    private final int _capacity;
+}
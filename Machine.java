@@ -1,9 +1,11 @@
 package enigma;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.NoSuchElementException;
+import java.util.Collections;
+import java.util.HashMap;
 
 import static enigma.EnigmaException.*;
 
@@ -20,11 +22,35 @@ class Machine {
         _alphabet = alpha;
         _numRotors = numRotors;
         _numPawls = pawls;
-        _allRotors = new HashMap<>();
-        _rotors = new ArrayList<>();
+        _ids = new HashMap<>();
+        ArrayList<Rotor> library = new ArrayList<>();
         for (Rotor rotor : allRotors) {
-            _allRotors.put(rotor.name(), rotor);
+            Integer id = _ids.putIfAbsent(rotor.name(), library.size());
+            if (id == null) {
+                library.add(rotor);
+            } else {
+                library.set(id, rotor);
+            }
         }
+        _library = library.toArray(new Rotor[0]);
+        _savedSettings = new int[_library.length];
+        _savedRings = new int[_library.length];
+        Arrays.fill(_savedSettings, -1);
+    }
+
+    /** A machine with the rotors of OTHER and its remembered settings,
+     *  with no rotors inserted.  The remembered settings are shared until
+     *  either machine changes them (see remember), so that a copy costs
+     *  nothing that grows with the number of available rotors. */
+    private Machine(Machine other) {
+        _alphabet = other._alphabet;
+        _numRotors = other._numRotors;
+        _numPawls = other._numPawls;
+        _ids = other._ids;
+        _library = other._library;
+        _savedSettings = other._savedSettings;
+        _savedRings = other._savedRings;
+        _savedShared = other._savedShared = true;
     }
 
     /** Return the number of rotor slots I have. */
@@ -37,116 +63,439 @@ class Machine {
         return _numPawls;
     }
 
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my available rotors, in the order I was given them. */
+    Collection<Rotor> availableRotors() {
+        return Collections.unmodifiableList(Arrays.asList(_library));
+    }
+
+    /** Return a new machine with my rotors, settings and plugboard, that
+     *  can convert independently of (and concurrently with) me.  The two
+     *  share my MachineSpec and available rotors, so only my settings are
+     *  copied. */
+    Machine copy() {
+        if (_slots == null) {
+            throw error("rotors have not been inserted");
+        }
+        Machine result = new Machine(this);
+        result._slots = _slots;
+        result._slotIds = _slotIds;
+        result._plugBoard = _plugBoard;
+        result._spec = spec();
+        result._state = _state.copy();
+        result._start = _start;
+        result._folding = _folding;
+        return result;
+    }
+
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Each rotor keeps the setting and ring it last had in this
+     *  machine, starting from those of the Rotor itself. */
     void insertRotors(String[] rotors) {
-        _rotors = new ArrayList<Rotor>();
+        remember();
+        _slots = null;
+        _spec = null;
+        _start = null;
         if (rotors.length != _numRotors) {
             throw new EnigmaException("Wrong Number Of Rotor s Passed");
         }
 
-        for (String key : _allRotors.keySet()) {
-            _allRotors.get(key).right(null);
+        Rotor[] slots = new Rotor[numRotors()];
+        int[] ids = new int[numRotors()];
+        int marked = 0;
+        if (_inserting == null) {
+            _inserting =
+                new long[(_library.length + Long.SIZE - 1) / Long.SIZE];
         }
-
-        for (int i = 0; i < numRotors(); i++) {
-            Rotor temp = _allRotors.get(rotors[i]);
-            if (temp == null) {
-                throw new EnigmaException("Rotor "
-                        + rotors[i] + " Not Found");
-            }
-            if (i == 0) {
-                if (!temp.reflecting()) {
+        try {
+            for (int i = 0; i < numRotors(); i++) {
+                Integer id = _ids.get(rotors[i]);
+                if (id == null) {
                     throw new EnigmaException("Rotor "
-                            + rotors[i] + " Not A Reflector");
+                            + rotors[i] + " Not Found");
                 }
-            } else if (i >= numRotors() - numPawls()) {
-                if (!temp.rotates()) {
-                    throw new EnigmaException("Rotor "
-                            + rotors[i] + " Not A Moving Rotor");
+                Rotor temp = _library[id];
+                if (!fits(temp, i)) {
+                    throw new EnigmaException("Rotor " + rotors[i]
+                            + (i == 0 ? " Not A Reflector"
+                               : " Not A Moving Rotor"));
                 }
-            } else {
-                if (temp.rotates()) {
+                if (!mark(id)) {
                     throw new EnigmaException("Rotor "
-                            + rotors[i] + " Not A Moving Rotor");
+                            + rotors[i] + " Cannot Be Repeated");
                 }
+                ids[i] = id;
+                slots[i] = temp;
+                marked = i + 1;
+            }
+        } finally {
+            for (int i = 0; i < marked; i++) {
+                _inserting[ids[i] / Long.SIZE] &= ~(1L << ids[i]);
+            }
+        }
+        insert(slots, ids);
+    }
+
+    /** Mark the rotor with id ID as being inserted, returning false if it
+     *  already was. */
+    private boolean mark(int id) {
+        long bit = 1L << id;
+        int word = id / Long.SIZE;
+        if ((_inserting[word] & bit) != 0) {
+            return false;
+        }
+        _inserting[word] |= bit;
+        return true;
+    }
+
+    /** Set my rotor slots to SLOTS, which have been checked and whose
+     *  ids are IDS, restoring the setting and ring each last had in this
+     *  machine. */
+    private void insert(Rotor[] slots, int[] ids) {
+        _slots = slots;
+        _slotIds = ids;
+        _state = new MachineState(numRotors(), _alphabet.size());
+        for (int i = 0; i < numRotors(); i++) {
+            int id = ids[i];
+            if (_savedSettings[id] < 0) {
+                _state.setRing(i, slots[i].ring());
+                _state.set(i, slots[i].setting());
+            } else {
+                _state.setRing(i, _savedRings[id]);
+                _state.set(i, _savedSettings[id]);
+            }
+        }
+    }
+
+    /** Return true iff ROTOR may be placed in my slot I: the reflector
+     *  slot takes only reflectors, the pawl slots only moving rotors,
+     *  and the others only non-moving ones. */
+    boolean fits(Rotor rotor, int i) {
+        if (i == 0) {
+            return rotor.reflecting();
+        } else if (i >= numRotors() - numPawls()) {
+            return rotor.rotates();
+        } else {
+            return !rotor.rotates();
+        }
+    }
+
+    /** Record the setting and ring of each of my rotors, so that they
+     *  are restored if it is inserted again, first taking my own copies
+     *  of the remembered settings if they are shared. */
+    private void remember() {
+        if (_slots != null) {
+            if (_savedShared) {
+                _savedSettings = _savedSettings.clone();
+                _savedRings = _savedRings.clone();
+                _savedShared = false;
             }
-            if (_rotors.contains(temp)) {
-                throw new EnigmaException("Rotor "
-                        + rotors[i] + " Cannot Be Repeated");
+            for (int i = 0; i < numRotors(); i++) {
+                _savedSettings[_slotIds[i]] = _state.setting(i);
+                _savedRings[_slotIds[i]] = _state.ring(i);
             }
-            _rotors.add(temp);
         }
+    }
 
-        for (int x = 0; x < _numRotors - 1; x++) {
-            _rotors.get(x).right(_rotors.get(x + 1));
+    /** Return my spec, building it if my rotors or plugboard have been
+     *  replaced since it was last built. */
+    MachineSpec spec() {
+        if (_spec == null) {
+            if (_slots == null) {
+                throw error("rotors have not been inserted");
+            }
+            _spec = new MachineSpec(_alphabet, _numPawls, _slots,
+                                    _plugBoard);
         }
+        return _spec;
+    }
+
+    /** Return the settings of my rotors, which change as I convert. */
+    MachineState state() {
+        if (_state == null) {
+            throw error("rotors have not been inserted");
+        }
+        return _state;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        if (setting.length() != _numRotors - 1) {
+        if (setting.codePointCount(0, setting.length()) != _numRotors - 1) {
             throw new EnigmaException("Setting Length not correct");
         }
+        MachineState state = state();
+        _start = new int[numRotors()];
+        for (int i = 1, k = 0; i < numRotors(); i++) {
+            int cp = setting.codePointAt(k);
+            k += Character.charCount(cp);
+            int posn = _alphabet.toIndex(cp);
+            if (!_slots[i].reflecting()) {
+                state.setPosition(i, posn);
+            } else if (posn != 0) {
+                throw error("reflector has only one position");
+            } else {
+                state.set(i, 0);
+            }
+            _start[i] = state.setting(i);
+        }
+    }
+
+    /** Return a Setup that restores my current rotors, positions and
+     *  plugboard, as just set from a setting line, and my current ring
+     *  settings iff RINGS (otherwise restoring the rings the rotors last
+     *  had, as insertRotors does). */
+    Setup saveSetup(boolean rings) {
+        MachineState state = state();
+        int[] positions = new int[numRotors()];
+        int[] ringSettings = rings ? new int[numRotors()] : null;
         for (int i = 1; i < numRotors(); i++) {
-            try {
-                _rotors.get(i).set(setting.charAt(i - 1));
-            } catch (NoSuchElementException exp) {
-                throw new EnigmaException("Setting Does Not Exist");
+            positions[i] = state.position(i);
+            if (rings) {
+                ringSettings[i] = state.ring(i);
+            }
+        }
+        return new Setup(_slots, _slotIds, spec(), _plugBoard, ringSettings,
+                         positions);
+    }
+
+    /** Set my rotors, rings, positions and plugboard as SETUP, saved by
+     *  saveSetup from this machine, records.  This has the same effect as
+     *  the insertRotors, setRing, setRotors and setPlugboard calls that
+     *  SETUP records, without checking or building anything again. */
+    void restoreSetup(Setup setup) {
+        remember();
+        insert(setup._slots, setup._ids);
+        MachineState state = _state;
+        _start = new int[numRotors()];
+        for (int i = 1; i < numRotors(); i++) {
+            if (setup._rings != null) {
+                state.setRing(i, setup._rings[i]);
+            }
+            if (!_slots[i].reflecting()) {
+                state.setPosition(i, setup._positions[i]);
+            } else {
+                state.set(i, 0);
             }
+            _start[i] = state.setting(i);
+        }
+        _plugBoard = setup._plugboard;
+        _spec = setup._spec;
+    }
+
+    /** The rotors, positions, plugboard and (optionally) rings applied
+     *  by one setting line, checked and compiled, so that the line can
+     *  be applied again cheaply.  It is immutable. */
+    static final class Setup {
+
+        /** A setup of rotors SLOTS, whose ids are IDS, with wiring SPEC
+         *  and plugboard PLUGBOARD, RINGS (or null to keep the rotors'
+         *  own), and POSITIONS, by slot. */
+        private Setup(Rotor[] slots, int[] ids, MachineSpec spec,
+                      Permutation plugboard, int[] rings, int[] positions) {
+            _slots = slots;
+            _ids = ids;
+            _spec = spec;
+            _plugboard = plugboard;
+            _rings = rings;
+            _positions = positions;
+        }
+
+        /** Rotors by slot. */
+        private final Rotor[] _slots;
+
+        /** Ids of _slots. */
+        private final int[] _ids;
+
+        /** Wiring of _slots and _plugboard. */
+        private final MachineSpec _spec;
+
+        /** The plugboard. */
+        private final Permutation _plugboard;
+
+        /** Ring settings by slot, or null if the line gave none. */
+        private final int[] _rings;
+
+        /** Positions by slot. */
+        private final int[] _positions;
+    }
+
+    /** Advance the rotors to the state they would reach by converting N
+     *  more characters, in time that does not depend on N. */
+    void advanceBy(long n) {
+        spec().advance(state(), n);
+    }
+
+    /** Return the rotors to the state they had after the last call to
+     *  setRotors, advanced by N characters (see advanceBy). */
+    void seek(long n) {
+        if (_start == null) {
+            throw error("rotors have not been set");
+        }
+        for (int i = 1; i < numRotors(); i++) {
+            _state.set(i, _start[i]);
         }
+        advanceBy(n);
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugBoard = plugboard;
+        _spec = null;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        for (Rotor rotor : _rotors) {
-            rotor.advance();
-        }
-        c = _plugBoard.permute(c);
-        for (int i = numRotors() - 1; i >= 0; i--) {
-            c = _rotors.get(i).convertForward(c);
+        if (_memo != null) {
+            return _memo.convert(spec(), _state, c);
         }
+        return spec().convert(_state, c, _folding);
+    }
 
-        for (int i = 1; i < numRotors(); i++) {
-            c = _rotors.get(i).convertBackward(c);
-        }
-        return _plugBoard.invert(c);
+    /** Memoize my substitutions at the settings of my moving rotors in at
+     *  most BUDGET bytes (see PositionCache), or stop doing so if BUDGET
+     *  is 0 or too small.  Copies of me do not share the memo. */
+    void setMemo(long budget) {
+        _memo = PositionCache.create(budget, _numRotors, _numPawls,
+                                     _alphabet.size());
+    }
+
+    /** Return my memo of substitutions, or null if I have none. */
+    PositionCache memo() {
+        return _memo;
+    }
+
+    /** Pass signals through the reflector and non-moving rotors with a
+     *  single precomputed table iff FOLD (the default), rather than
+     *  rotor by rotor. */
+    void setFolding(boolean fold) {
+        _folding = fold;
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String out = "";
-        msg = msg.replaceAll("\\s", "");
-        for (int i = 0; i < msg.length(); i++) {
-            out += _alphabet.toChar(convert(_alphabet.toInt(msg.charAt(i))));
+        StringBuilder out = new StringBuilder(msg.length());
+        convert(msg, out);
+        return out.toString();
+    }
+
+    /** Append the encoding/decoding of IN to OUT, skipping whitespace
+     *  and updating the state of the rotors accordingly. */
+    void convert(CharSequence in, Appendable out) {
+        try {
+            if (!_alphabet.bmp()) {
+                convertCodePoints(in, out);
+                return;
+            }
+            for (int i = 0, n = in.length(); i < n; i++) {
+                char ch = in.charAt(i);
+                if (!isWhitespace(ch)) {
+                    out.append(convert(ch));
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write converted message");
+        }
+    }
+
+    /** Convert the LEN characters of SRC starting at OFF, skipping
+     *  whitespace, into DST starting at DSTOFF, and return the number
+     *  of characters written.  DST may be SRC itself, provided that
+     *  DSTOFF <= OFF.  My alphabet must be bmp(). */
+    int convert(char[] src, int off, int len, char[] dst, int dstOff) {
+        int k = dstOff;
+        for (int i = off, end = off + len; i < end; i++) {
+            char ch = src[i];
+            if (!isWhitespace(ch)) {
+                dst[k++] = convert(ch);
+            }
+        }
+        return k - dstOff;
+    }
+
+    /** Append the encoding/decoding of IN to OUT, as for
+     *  convert(CharSequence, Appendable), character by code point, as
+     *  an alphabet that is not bmp() requires. */
+    private void convertCodePoints(CharSequence in, Appendable out)
+        throws IOException {
+        StringBuilder buffer = out instanceof StringBuilder
+            ? (StringBuilder) out : new StringBuilder(in.length());
+        for (int i = 0, n = in.length(); i < n;) {
+            int cp = Character.codePointAt(in, i);
+            i += Character.charCount(cp);
+            if (cp > Character.MAX_VALUE || !isWhitespace((char) cp)) {
+                buffer.appendCodePoint(convertCodePoint(cp));
+            }
+        }
+        if (buffer != out) {
+            out.append(buffer);
         }
-        return out;
+    }
+
+    /** Return the code point of the encoding/decoding of the character
+     *  with code point CP, after first advancing the machine. */
+    int convertCodePoint(int cp) {
+        int c = _alphabet.toIndex(cp);
+        if (c < 0) {
+            throw error("Character %c not in alphabet", cp);
+        }
+        return _alphabet.toCodePoint(convert(c));
+    }
+
+    /** Return the encoding/decoding of character CH, after first
+     *  advancing the machine. */
+    private char convert(char ch) {
+        int c = _alphabet.toInt(ch);
+        if (c < 0) {
+            throw error("Character %c not in alphabet", ch);
+        }
+        return _alphabet.toChar(convert(c));
+    }
+
+    /** Return true iff CH is skipped in messages (the characters of the
+     *  regular expression class \s). */
+    static boolean isWhitespace(char ch) {
+        return ch == ' ' || (ch >= '\t' && ch <= '\r');
+    }
+
+    /** Return the indices in ALPHABET of the characters of TEXT,
+     *  skipping whitespace, as in messages. */
+    static int[] indices(Alphabet alphabet, String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (!isWhitespace(ch)) {
+                result[n] = alphabet.toInt(ch);
+                if (result[n] < 0) {
+                    throw error("Character %c not in alphabet", ch);
+                }
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
     }
 
     /** Set the Ring Settings.
      * @param setting ring setting
      */
     void setRing(String setting) {
-        if (setting.length() != _numRotors - 1) {
+        if (setting.codePointCount(0, setting.length()) != _numRotors - 1) {
             throw new EnigmaException("Ring Setting Length not correct");
         }
-        for (int i = 1; i < numRotors(); i++) {
-            try {
-                _rotors.get(i).setRing(setting.charAt(i - 1));
-            } catch (NoSuchElementException exp) {
-                throw new EnigmaException("Ring Setting Does Not Exist");
-            }
+        for (int i = 1, k = 0; i < numRotors(); i++) {
+            int cp = setting.codePointAt(k);
+            k += Character.charCount(cp);
+            state().setRing(i, _alphabet.toIndex(cp));
         }
     }
 
@@ -162,10 +511,48 @@ class Machine {
     /** Permutation for plugboard connections. */
     private Permutation _plugBoard;
 
-    /** Store All Rotors. */
-    private HashMap<String, Rotor> _allRotors;
+    /** Available rotors, by id (their index in the order given). */
+    private final Rotor[] _library;
+
+    /** Id of each available rotor, by name.  Shared by my copies. */
+    private final HashMap<String, Integer> _ids;
+
+    /** Rotors In Use, by slot, or null if none have been inserted. */
+    private Rotor[] _slots;
+
+    /** Ids of _slots. */
+    private int[] _slotIds;
+
+    /** Bit set, by id, of the rotors being inserted, used to find
+     *  repeated rotors without search; clear between insertions, and
+     *  null until the first. */
+    private long[] _inserting;
+
+    /** Wiring of my rotors and plugboard, or null if it must be
+     *  rebuilt. */
+    private MachineSpec _spec;
+
+    /** Current settings of my rotors. */
+    private MachineState _state;
+
+    /** Setting and ring of each rotor when it was last removed, by id;
+     *  the setting is -1 for rotors not yet removed. */
+    private int[] _savedSettings, _savedRings;
+
+    /** True iff _savedSettings and _savedRings may be shared with a copy
+     *  of me or the machine I copy, and so must be copied before they are
+     *  changed. */
+    private boolean _savedShared;
+
+    /** True iff the reflector and non-moving rotors are folded into a
+     *  single table. */
+    private boolean _folding = true;
+
+    /** Memo of my substitutions by the settings of my moving rotors, or
+     *  null. */
+    private PositionCache _memo;
 
-    /** Store Rotors In Use. */
-    private ArrayList<Rotor> _rotors;
+    /** Settings of my rotors as last given to setRotors, by slot. */
+    private int[] _start;
 
 }
@@ -0,0 +1,295 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** The fixed wiring of an Enigma machine: its alphabet, the rotors in
+ *  its slots (compiled to tables), the notches of the rotors under its
+ *  pawls, and its plugboard.  A spec is immutable, and so may be shared
+ *  by any number of machines, each of which keeps its own settings in a
+ *  MachineState.  Once a spec has converted COMPILE_THRESHOLD keypresses
+ *  it compiles itself to an Engine (see EngineCompiler), through which
+ *  it converts from then on; if it cannot, it goes on as before.
+ *  @author Manavjot Singh
+ */
+final class MachineSpec {
+
+    /** The wiring of a machine over ALPHABET whose slots hold ROTORS
+     *  (ROTORS[0] being the reflector), the last NUMPAWLS of them under
+     *  pawls, with plugboard PLUGBOARD (no connections if null). */
+    MachineSpec(Alphabet alphabet, int numPawls, Rotor[] rotors,
+                Permutation plugboard) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _numRotors = rotors.length;
+        _boundary = _numRotors - numPawls;
+        _forward = new int[_numRotors][];
+        _backward = new int[_numRotors][];
+        _notches = new boolean[_numRotors][];
+        _notchMasks = new long[_numRotors][];
+        _rotatedForward = new int[_numRotors][];
+        _rotatedBackward = new int[_numRotors][];
+        boolean rotated = true;
+        for (int i = 0; i < _numRotors; i++) {
+            _forward[i] = table(rotors[i].permutation(), false);
+            _backward[i] = table(rotors[i].permutation(), true);
+            if (i >= _boundary) {
+                _notches[i] = rotors[i].notches();
+                _notchMasks[i] = Odometer.mask(_notches[i]);
+                _rotatedForward[i] = rotors[i].permutation().rotated(false);
+                _rotatedBackward[i] = rotors[i].permutation().rotated(true);
+                rotated &= _rotatedForward[i] != null
+                    && _rotatedBackward[i] != null;
+            }
+        }
+        _rotated = rotated;
+        if (plugboard == null) {
+            plugboard = new Permutation("", alphabet);
+        }
+        _plugIn = table(plugboard, false);
+        _plugOut = table(plugboard, true);
+    }
+
+    /** Return the mapping of PERM, or of its inverse iff INVERSE, as a
+     *  table. */
+    private int[] table(Permutation perm, boolean inverse) {
+        int[] result = new int[_size];
+        for (int p = 0; p < _size; p++) {
+            result[p] = inverse ? perm.invert(p) : perm.permute(p);
+        }
+        return result;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of my rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of my pawls. */
+    int numPawls() {
+        return _numRotors - _boundary;
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1) in STATE, after first
+     *  advancing STATE by one keypress. */
+    int convert(MachineState state, int c) {
+        return convert(state, c, true);
+    }
+
+    /** As for convert(STATE, C), but passing signals through the
+     *  reflector and non-moving rotors with a single table (cached in
+     *  STATE) iff FOLD, rather than rotor by rotor. */
+    int convert(MachineState state, int c, boolean fold) {
+        if (fold) {
+            Engine engine = engine();
+            if (engine != null) {
+                return engine.convert(state.positions(), state.rings(),
+                                      reflection(state), c);
+            }
+        }
+        step(state);
+        return pass(state, c, fold);
+    }
+
+    /** Return my compiled engine, or null if I have none, compiling
+     *  myself once I have converted COMPILE_THRESHOLD keypresses.  Uses
+     *  are counted without synchronization, so a spec shared by several
+     *  threads may lose counts and be compiled late, or be compiled by
+     *  more than one of them, which is harmless; since the count is
+     *  compared with >= rather than ==, no interleaving can step past the
+     *  threshold and leave the spec never compiled.  _compiled stops the
+     *  counting for good once compilation has been tried, even if it
+     *  gave no engine. */
+    private Engine engine() {
+        Engine engine = _engine;
+        if (engine == null && !_compiled && COMPILE_THRESHOLD > 0) {
+            _uses += 1;
+            if (_uses >= COMPILE_THRESHOLD) {
+                _compiled = true;
+                engine = _engine = EngineCompiler.compile(this);
+            }
+        }
+        return engine;
+    }
+
+    /** Advance STATE by one keypress. */
+    void step(MachineState state) {
+        Odometer.step(state.positions(), _boundary, _notchMasks, _size);
+    }
+
+    /** Return the conversion of C by a machine in STATE, without
+     *  advancing it. */
+    int map(MachineState state, int c) {
+        return pass(state, c, true);
+    }
+
+    /** Return the result of passing C through the plugboard and rotors in
+     *  STATE, folded iff FOLD (see convert), without advancing. */
+    private int pass(MachineState state, int c, boolean fold) {
+        if (fold && _rotated) {
+            return passRotated(state, c);
+        }
+        c = _plugIn[c];
+        for (int i = _numRotors - 1; i >= _boundary; i--) {
+            c = through(_forward[i], state.setting(i), c);
+        }
+        if (fold) {
+            c = reflection(state)[c];
+        } else {
+            c = reflect(state, c);
+        }
+        for (int i = _boundary; i < _numRotors; i++) {
+            c = through(_backward[i], state.setting(i), c);
+        }
+        return _plugOut[c];
+    }
+
+    /** As for pass(STATE, C, true), but passing C through the moving
+     *  rotors by their rotated wirings (see Permutation.rotated), which
+     *  they must all have. */
+    private int passRotated(MachineState state, int c) {
+        c = _plugIn[c];
+        for (int i = _numRotors - 1; i >= _boundary; i--) {
+            c = _rotatedForward[i][state.setting(i) * _size + c];
+        }
+        c = reflection(state)[c];
+        for (int i = _boundary; i < _numRotors; i++) {
+            c = _rotatedBackward[i][state.setting(i) * _size + c];
+        }
+        return _plugOut[c];
+    }
+
+    /** Return the result of passing C through a rotor with mapping TABLE
+     *  at setting SET (in the range 0..alphabet size - 1). */
+    private int through(int[] table, int set, int c) {
+        int p = c + set;
+        int r = table[p >= _size ? p - _size : p] - set;
+        return r < 0 ? r + _size : r;
+    }
+
+    /** Return the result of passing C leftward through the reflector and
+     *  the non-moving rotors of STATE, and back out again to the leftmost
+     *  moving rotor. */
+    private int reflect(MachineState state, int c) {
+        for (int i = _boundary - 1; i >= 0; i--) {
+            c = through(_forward[i], state.setting(i), c);
+        }
+        for (int i = 1; i < _boundary; i++) {
+            c = through(_backward[i], state.setting(i), c);
+        }
+        return c;
+    }
+
+    /** Return the table giving reflect(STATE, c) for each index c,
+     *  building it and recording it in STATE if need be.  The table must
+     *  not be modified. */
+    int[] reflection(MachineState state) {
+        int[] table = state.reflection();
+        if (table == null) {
+            table = new int[_size];
+            for (int c = 0; c < _size; c++) {
+                table[c] = reflect(state, c);
+            }
+            state.setReflection(table);
+        }
+        return table;
+    }
+
+    /** Return the mapping of the rotor in slot I at setting 0, or its
+     *  inverse iff INVERSE, as a table that must not be modified. */
+    int[] table(int i, boolean inverse) {
+        return inverse ? _backward[i] : _forward[i];
+    }
+
+    /** Return the mapping of my plugboard on the way in (or out iff OUT)
+     *  as a table that must not be modified. */
+    int[] plugboard(boolean out) {
+        return out ? _plugOut : _plugIn;
+    }
+
+    /** Return the rotated wiring (see Permutation.rotated) of the rotor
+     *  in slot I, which must be under a pawl, or of its inverse iff
+     *  INVERSE, or null if it has none.  The table must not be
+     *  modified. */
+    int[] rotated(int i, boolean inverse) {
+        return inverse ? _rotatedBackward[i] : _rotatedForward[i];
+    }
+
+    /** Return the notch mask (see Odometer.mask) of the rotor in slot I,
+     *  which must be under a pawl.  The mask must not be modified. */
+    long[] notchMask(int i) {
+        return _notchMasks[i];
+    }
+
+    /** Return the notch table of the rotor in slot I (see
+     *  Rotor.notches), which must be under a pawl.  The table must not
+     *  be modified. */
+    boolean[] notches(int i) {
+        return _notches[i];
+    }
+
+    /** Advance STATE to the state it would reach by converting N more
+     *  characters, in time that does not depend on N. */
+    void advance(MachineState state, long n) {
+        int[] pos = state.positions();
+        int[] pawls = Arrays.copyOfRange(pos, _boundary, _numRotors);
+        Odometer.advance(pawls,
+                         Arrays.copyOfRange(_notches, _boundary, _numRotors),
+                         _size, n);
+        System.arraycopy(pawls, 0, pos, _boundary, pawls.length);
+    }
+
+    /** Number of keypresses converted with folding before a spec is
+     *  compiled, given by the system property enigma.compile; 0 for
+     *  never. */
+    static final int COMPILE_THRESHOLD =
+        Integer.getInteger("enigma.compile", 1 << 16);
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Slot of the leftmost rotor under a pawl. */
+    private final int _boundary;
+
+    /** Forward and inverse mappings of the rotor in each slot at
+     *  setting 0. */
+    private final int[][] _forward, _backward;
+
+    /** Notch tables of the rotors under pawls, by slot (see
+     *  Rotor.notches). */
+    private final boolean[][] _notches;
+
+    /** The same, as bit masks for stepping (see Odometer.mask). */
+    private final long[][] _notchMasks;
+
+    /** Rotated wirings of the rotors under pawls and of their inverses,
+     *  by slot, where they have them (see Permutation.rotated). */
+    private final int[][] _rotatedForward, _rotatedBackward;
+
+    /** True iff every rotor under a pawl has both rotated wirings. */
+    private final boolean _rotated;
+
+    /** Mappings of the plugboard on the way in and the way out. */
+    private final int[] _plugIn, _plugOut;
+
+    /** My compiled engine, or null if I have none (yet). */
+    private Engine _engine;
+
+    /** Number of keypresses converted with folding, up to
+     *  COMPILE_THRESHOLD. */
+    private int _uses;
+
+    /** True once compilation has been tried. */
+    private boolean _compiled;
+}
@@ -0,0 +1,123 @@
+package enigma;
+
+/** The rotor settings of one machine built to a MachineSpec: the position
+ *  (the index of the character showing in the window) and the ring
+ *  setting of the rotor in each slot.  A state holds no wiring, so
+ *  copying it is cheap, and any number of states can be converted
+ *  concurrently with one shared spec.
+ *  @author Manavjot Singh
+ */
+final class MachineState {
+
+    /** A state for a machine with NUMROTORS slots over an alphabet of
+     *  SIZE characters, with every rotor at position 0 and ring 0. */
+    MachineState(int numRotors, int size) {
+        _size = size;
+        _positions = new int[numRotors];
+        _rings = new int[numRotors];
+    }
+
+    /** Return a copy of me that can be set and advanced independently. */
+    MachineState copy() {
+        MachineState result = new MachineState(0, _size);
+        result._positions = _positions.clone();
+        result._rings = _rings.clone();
+        result._reflection = _reflection;
+        return result;
+    }
+
+    /** Make me a copy of OTHER, which describes as many slots as I do,
+     *  without allocating. */
+    void copyFrom(MachineState other) {
+        System.arraycopy(other._positions, 0, _positions, 0,
+                         _positions.length);
+        System.arraycopy(other._rings, 0, _rings, 0, _rings.length);
+        _reflection = other._reflection;
+    }
+
+    /** Return the number of slots I describe. */
+    int numRotors() {
+        return _positions.length;
+    }
+
+    /** Return the position of the rotor in slot I. */
+    int position(int i) {
+        return _positions[i];
+    }
+
+    /** Return the ring setting of the rotor in slot I. */
+    int ring(int i) {
+        return _rings[i];
+    }
+
+    /** Return the setting of the rotor in slot I: its position less its
+     *  ring setting. */
+    int setting(int i) {
+        int set = _positions[i] - _rings[i];
+        return set < 0 ? set + _size : set;
+    }
+
+    /** Set the rotor in slot I to position POSN (modulo the alphabet
+     *  size). */
+    void setPosition(int i, int posn) {
+        _positions[i] = wrap(posn);
+        _reflection = null;
+    }
+
+    /** Set the rotor in slot I to setting SET under its current ring. */
+    void set(int i, int set) {
+        setPosition(i, set + _rings[i]);
+    }
+
+    /** Set the ring of the rotor in slot I to RING, keeping its
+     *  setting. */
+    void setRing(int i, int ring) {
+        int set = setting(i);
+        _rings[i] = wrap(ring);
+        set(i, set);
+    }
+
+    /** Return the array of positions by slot, which the caller may
+     *  advance in place as long as no rotor below the pawls moves. */
+    int[] positions() {
+        return _positions;
+    }
+
+    /** Return the array of ring settings by slot, which must not be
+     *  modified. */
+    int[] rings() {
+        return _rings;
+    }
+
+    /** Return the combined mapping of the rotors below the pawls that
+     *  was last recorded by setReflection, or null if any of those rotors
+     *  has been set since. */
+    int[] reflection() {
+        return _reflection;
+    }
+
+    /** Record TABLE as the combined mapping of the rotors below the
+     *  pawls at their current settings. */
+    void setReflection(int[] table) {
+        _reflection = table;
+    }
+
+    /** Return P modulo the alphabet size. */
+    private int wrap(int p) {
+        int r = p % _size;
+        return r < 0 ? r + _size : r;
+    }
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Position of the rotor in each slot. */
+    private int[] _positions;
+
+    /** Ring setting of the rotor in each slot. */
+    private int[] _rings;
+
+    /** Cached mapping of the reflector and non-moving rotors, which is
+     *  shared with copies, since it is never modified. */
+    private int[] _reflection;
+}
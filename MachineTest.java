@@ -1,12 +1,308 @@
 package enigma;
 
 import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author
+ */
 public class MachineTest {
 
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Notches of the naval rotors. */
+    private static final String[][] NOTCHES = {
+        {"I", "Q"}, {"II", "E"}, {"III", "V"}, {"IV", "J"}, {"V", "Z"},
+        {"VI", "ZM"}, {"VII", "ZM"}, {"VIII", "ZM"},
+    };
+
+    /** Return a 5-slot, 3-pawl machine holding the naval rotors. */
+    static Machine navalMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String[] rotor : NOTCHES) {
+            rotors.add(new MovingRotor(rotor[0],
+                new Permutation(NAVALA.get(rotor[0]), UPPER), rotor[1]));
+        }
+        for (String name : new String[] {"Beta", "Gamma"}) {
+            rotors.add(new FixedRotor(name,
+                new Permutation(NAVALA.get(name), UPPER)));
+        }
+        for (String name : new String[] {"B", "C"}) {
+            rotors.add(new Reflector(name,
+                new Permutation(NAVALA.get(name), UPPER)));
+        }
+        return new Machine(UPPER, 5, 3, rotors);
+    }
+
+    /** Return the naval machine set up as in the project examples. */
+    static Machine exampleMachine() {
+        Machine M = navalMachine();
+        M.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        M.setRotors("AXLE");
+        M.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
+        return M;
+    }
+
+    /** Return S with each upper-case letter replaced by the mathematical
+     *  bold capital (outside the Basic Multilingual Plane) for it. */
+    static String bold(String s) {
+        StringBuilder result = new StringBuilder();
+        for (char c : s.toCharArray()) {
+            if (c >= 'A' && c <= 'Z') {
+                result.appendCodePoint(BOLD_A + c - 'A');
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Code point of the mathematical bold capital A. */
+    private static final int BOLD_A = 0x1d400;
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void supplementaryAlphabetMatchesUpper() {
+        Alphabet letters = new Alphabet(bold(UPPER_STRING));
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String[] rotor : NOTCHES) {
+            rotors.add(new MovingRotor(rotor[0],
+                new Permutation(bold(NAVALA.get(rotor[0])), letters),
+                bold(rotor[1])));
+        }
+        rotors.add(new FixedRotor("Beta",
+            new Permutation(bold(NAVALA.get("Beta")), letters)));
+        rotors.add(new Reflector("B",
+            new Permutation(bold(NAVALA.get("B")), letters)));
+        Machine M = new Machine(letters, 5, 3, rotors);
+        M.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        M.setRotors(bold("AXLE"));
+        M.setRing(bold("AAAA"));
+        M.setPlugboard(new Permutation(bold("(HQ) (EX) (IP) (TR) (BY)"),
+                                       letters));
+        assertEquals(bold("QVPQSOKOILPUBKJZPISFXDW"),
+                     M.convert(bold("FROM HIS SHOULDER HIAWATHA")));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void insertRotorsTest() {
+        navalMachine().insertRotors(new String[] {"B", "Beta", "III", "IV",
+                                                  "III"});
+    }
+
+    @Test
+    public void failedInsertionLeavesRotorsFree() {
+        Machine M = navalMachine();
+        for (String[] bad : new String[][] {
+                {"B", "Beta", "III", "IV", "III"},
+                {"B", "Beta", "III", "IV", "IX"},
+                {"B", "Beta", "III", "IV", "Gamma"}}) {
+            try {
+                M.insertRotors(bad);
+                fail("accepted " + String.join(" ", bad));
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+        M.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        M.setRotors("AXLE");
+        M.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     M.convert("FROM HIS SHOULDER HIAWATHA"));
+    }
+
+    @Test
+    public void convertString() {
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     exampleMachine().convert("FROM his shoulder Hiawatha"
+                                              .toUpperCase()));
+    }
+
+    @Test
+    public void convertBuffers() {
+        char[] buf = "FROM HIS\tSHOULDER HIAWATHA".toCharArray();
+        int n = exampleMachine().convert(buf, 0, buf.length, buf, 0);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", new String(buf, 0, n));
+    }
+
     @Test
-    void insertRotorsTest() {
+    public void foldingMatchesRotorByRotor() {
+        Machine folded = exampleMachine(), plain = exampleMachine();
+        plain.setFolding(false);
+        for (int i = 0; i < 5000; i += 1) {
+            assertEquals(msg("folding", "keypress %d", i),
+                         plain.convert(i % 26), folded.convert(i % 26));
+        }
+    }
 
+    @Test
+    public void maskedSteppingMatchesTables() {
+        Random random = new Random(21);
+        int size = 100, m = 5;
+        boolean[][] notches = new boolean[m][size];
+        long[][] masks = new long[m][];
+        for (int j = 0; j < m; j += 1) {
+            for (int k = random.nextInt(4); k >= 0; k -= 1) {
+                notches[j][random.nextInt(size)] = true;
+            }
+            masks[j] = Odometer.mask(notches[j]);
+        }
+        int[] tabled = new int[m], masked = new int[m];
+        for (int i = 0; i < 200_000; i += 1) {
+            Odometer.step(tabled, 0, notches, size);
+            Odometer.step(masked, 0, masks, size);
+            assertArrayEquals(msg("step", "keypress %d", i), tabled, masked);
+        }
+    }
+
+    @Test
+    public void compiledEngineMatchesSpec() {
+        Machine machine = exampleMachine();
+        MachineSpec spec = machine.spec();
+        Engine engine = EngineCompiler.compile(spec);
+        assertNotNull(engine);
+        MachineState compiled = machine.state().copy();
+        MachineState plain = machine.state().copy();
+        for (int i = 0; i < 20_000; i += 1) {
+            int c = i * 7 % 26;
+            spec.step(plain);
+            assertEquals(msg("engine", "keypress %d", i), spec.map(plain, c),
+                         engine.convert(compiled.positions(),
+                                        compiled.rings(),
+                                        spec.reflection(compiled), c));
+        }
+        assertArrayEquals(plain.positions(), compiled.positions());
+        assertFalse(EngineCompiler.verify(spec, (pos, rings, table, c) -> c));
+    }
+
+    @Test
+    public void memoMatchesConversion() {
+        Machine plain = exampleMachine(), memoized = exampleMachine();
+        memoized.setMemo(2000);
+        PositionCache memo = memoized.memo();
+        assertTrue(memo.capacity() < 100);
+        for (int n = 0; n < 3; n += 1) {
+            plain.seek(0);
+            memoized.seek(0);
+            for (int i = 0; i < 5000; i += 1) {
+                assertEquals(msg("memo", "pass %d, keypress %d", n, i),
+                             plain.convert(i % 26), memoized.convert(i % 26));
+            }
+        }
+        assertTrue(memo.evictions() > 0);
+        memoized.seek(0);
+        memoized.convert(0);
+        memoized.convert(0);
+        memoized.seek(0);
+        long hits = memo.hits();
+        memoized.convert(0);
+        memoized.convert(0);
+        assertEquals(hits + 2, memo.hits());
+        memoized.setRotors("AXLF");
+        plain.setRotors("AXLF");
+        assertEquals(plain.convert("HELLOWORLD"),
+                     memoized.convert("HELLOWORLD"));
+    }
+
+    @Test
+    public void seekMatchesStepping() {
+        Machine stepped = exampleMachine(), jumped = exampleMachine();
+        for (int n : new int[] {0, 1, 25, 26, 650, 676, 17_579}) {
+            stepped.seek(0);
+            for (int i = 0; i < n; i += 1) {
+                stepped.convert(0);
+            }
+            jumped.seek(n);
+            for (int i = 0; i < 100; i += 1) {
+                assertEquals(msg("seek", "%d + %d", n, i),
+                             stepped.convert(i % 26), jumped.convert(i % 26));
+            }
+        }
+    }
+
+    @Test
+    public void setRingKeepsSetting() {
+        MachineState state = new MachineState(3, 26);
+        state.setPosition(2, 5);
+        state.setRing(2, 3);
+        assertEquals(5, state.setting(2));
+        assertEquals(8, state.position(2));
+        state.setRing(2, 24);
+        assertEquals(5, state.setting(2));
+        assertEquals(3, state.position(2));
+    }
+
+    @Test
+    public void copiesRememberSettingsApart() {
+        String[] naval = {"B", "Beta", "III", "IV", "I"};
+        String[] other = {"C", "Gamma", "I", "II", "III"};
+        Machine M = exampleMachine(), copy = M.copy();
+        copy.setRotors("QQQQ");
+        copy.insertRotors(other);
+        M.insertRotors(other);
+        M.insertRotors(naval);
+        copy.insertRotors(naval);
+        Machine expected = exampleMachine();
+        assertEquals(expected.convert("FROM HIS SHOULDER HIAWATHA"),
+                     M.convert("FROM HIS SHOULDER HIAWATHA"));
+        expected = exampleMachine();
+        expected.setRotors("QQQQ");
+        assertEquals(expected.convert("FROM HIS SHOULDER HIAWATHA"),
+                     copy.convert("FROM HIS SHOULDER HIAWATHA"));
+    }
+
+    @Test
+    public void statesShareSpec() {
+        Machine M = exampleMachine();
+        MachineSpec spec = M.spec();
+        MachineState first = M.state().copy(), second = first.copy();
+        int[] out = new int[1000];
+        for (int i = 0; i < out.length; i += 1) {
+            out[i] = spec.convert(first, i % 26);
+            assertEquals(msg("shared", "keypress %d", i),
+                         M.convert(i % 26), out[i]);
+        }
+        for (int i = 0; i < out.length; i += 1) {
+            assertEquals(msg("shared", "copy %d", i),
+                         out[i], spec.convert(second, i % 26));
+        }
+    }
+
+    @Test
+    public void restoredSetupMatchesSettingLine() {
+        Machine saved = navalMachine(), fresh = navalMachine();
+        for (Machine M : new Machine[] {saved, fresh}) {
+            M.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+            M.setRing("AABC");
+            M.setRotors("AAAA");
+            M.convert("ABCDEFGHIJ");
+        }
+        saved.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        saved.setRotors("AXLE");
+        saved.setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+        Machine.Setup setup = saved.saveSetup(false);
+        String expected = saved.convert("FROM HIS SHOULDER HIAWATHA");
+        saved.insertRotors(new String[] {"C", "Gamma", "I", "II", "III"});
+        saved.setRotors("QQQQ");
+        saved.restoreSetup(setup);
+        assertEquals(expected, saved.convert("FROM HIS SHOULDER HIAWATHA"));
+        fresh.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        fresh.setRotors("AXLE");
+        fresh.setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+        fresh.restoreSetup(setup);
+        assertEquals(expected, fresh.convert("FROM HIS SHOULDER HIAWATHA"));
     }
 
 }
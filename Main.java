@@ -1,13 +1,20 @@
 package enigma;
 
-import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
-import java.util.Scanner;
 
 
 import static enigma.EnigmaException.*;
@@ -25,7 +32,11 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  When both files are named and the system
+     *  property enigma.mmap is true, they are memory-mapped rather than
+     *  streamed, provided the alphabet is encoded one byte per
+     *  character.  ARGS[0] may instead name a configuration compiled by
+     *  CompiledConfig. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -42,98 +53,211 @@ public final class Main {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        if (CompiledConfig.isCompiled(args[0])) {
+            _compiledName = args[0];
+        } else {
+            _config = getInput(args[0]);
+        }
+
+        if (args.length == 3 && MAPPED) {
+            _mappedNames = new String[] { args[1], args[2] };
+            prepareMapped(args[1], args[2]);
+            return;
+        }
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = new LineReader(reader(openInput(args[1])));
         } else {
-            _input = new Scanner(System.in);
+            _input = new LineReader(reader(System.in));
         }
 
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            _output = new GroupedWriter(writer(getOutput(args[2])));
         } else {
-            _output = System.out;
+            _output = new GroupedWriter(writer(System.out));
+        }
+    }
+
+    /** Check that the file named INPUT can be read, and empty the file
+     *  named OUTPUT (creating it if need be), as opening them to stream
+     *  them would, so that errors in the configuration leave the same
+     *  files behind whether or not they are memory-mapped. */
+    private void prepareMapped(String input, String output) {
+        try {
+            openInput(input).close();
+            getOutput(output).close();
+        } catch (IOException excp) {
+            throw error("could not open %s", output);
+        }
+    }
+
+    /** Return a Tokenizer of the contents of the file named NAME. */
+    private static Tokenizer getInput(String name) {
+        try {
+            return new Tokenizer(new String(Files.readAllBytes(Paths.get(name)),
+                                            Charset.defaultCharset()));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return a stream reading from the file named NAME. */
+    private InputStream openInput(String name) {
         try {
-            return new Scanner(new File(name));
+            return new FileInputStream(name);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a stream writing to the file named NAME. */
+    private OutputStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new FileOutputStream(name);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /** Return a reader of the characters of IN. */
+    private static InputStreamReader reader(InputStream in) {
+        return new InputStreamReader(in, Charset.defaultCharset());
+    }
+
+    /** Return a writer of characters to OUT. */
+    private static OutputStreamWriter writer(OutputStream out) {
+        return new OutputStreamWriter(out, Charset.defaultCharset());
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
     private void process() {
-        Machine A = readConfig();
-        String setup = _input.nextLine(), coded, buffer;
-        while (setup.equals("")) {
-            setup = _input.nextLine();
-            printMessageLine("");
-        }
-        setUp(A, setup);
-
-        while (_input.hasNext()) {
-            if (_input.hasNext("[*]")) {
-                setup = _input.nextLine();
-                while (setup.equals("")) {
-                    setup = _input.nextLine();
-                    printMessageLine("");
-                }
-                setUp(A, setup);
-            } else {
-                coded = _input.nextLine();
-                printMessageLine(A.convert(coded));
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        Machine A = _compiledName != null
+            ? CompiledConfig.load(_compiledName) : readConfig(_config);
+        _alphabet = A.alphabet();
+        if (MEMO > 0) {
+            A.setMemo(MEMO);
+        }
+        if (Metrics.ENABLED) {
+            Metrics.readConfig(System.nanoTime() - start,
+                               A.availableRotors().size());
+        }
+        try {
+            processMessages(A);
+        } finally {
+            if (Metrics.ENABLED) {
+                Metrics.summary(System.err);
+            }
+        }
+    }
+
+    /** Apply A to the messages in _input, sending the results to
+     *  _output, or to those in the files named by _mappedNames. */
+    private void processMessages(Machine A) {
+        if (_mappedNames != null) {
+            if (MappedFiles.supports(_alphabet)) {
+                processMapped(A);
+                return;
             }
+            _input = new LineReader(reader(openInput(_mappedNames[0])));
+            _output = new GroupedWriter(writer(getOutput(_mappedNames[1])));
+        }
+        try {
+            new InputProcessor() {
+                @Override
+                void setting(String settings) {
+                    timedSetUp(A, settings);
+                    if (KEYSTREAM != null) {
+                        openKeystream(A);
+                    }
+                }
+
+                @Override
+                void message() {
+                    long start = Metrics.ENABLED ? System.nanoTime() : 0;
+                    int count =
+                        printMessageLine(A, _input.buffer(), _input.length());
+                    if (Metrics.ENABLED) {
+                        Metrics.message(System.nanoTime() - start, count);
+                    }
+                }
+
+                @Override
+                void blankLines(int n) {
+                    printBlankLines(n);
+                }
+            }.run(_input);
+        } finally {
+            _output.close();
+        }
+    }
+
+    /** Apply A to the messages in the files named by _mappedNames,
+     *  through memory maps of both. */
+    private void processMapped(Machine A) {
+        MappedFiles files =
+            new MappedFiles(_mappedNames[0], _mappedNames[1], _alphabet);
+        try {
+            files.allocate(files.measure());
+            new InputProcessor() {
+                @Override
+                void setting(String settings) {
+                    timedSetUp(A, settings);
+                }
+
+                @Override
+                void message() {
+                    long start = Metrics.ENABLED ? System.nanoTime() : 0;
+                    int count = files.message(A);
+                    if (Metrics.ENABLED) {
+                        Metrics.message(System.nanoTime() - start, count);
+                    }
+                }
+
+                @Override
+                void blankLines(int n) {
+                    files.blankLines(n);
+                }
+            }.run(files.lines());
+        } finally {
+            files.close();
         }
-        _input.useDelimiter("");
-        while (_input.hasNext("[\\n]")) {
-            _input.next();
-            printMessageLine("");
+    }
+
+    /** Return an Enigma machine configured from the configuration file
+     *  named CONFIG, read as for the configuration file given to main.
+     *  Its rotors are available but not inserted.  Only the configuration
+     *  is opened. */
+    static Machine loadMachine(String config) {
+        if (CompiledConfig.isCompiled(config)) {
+            return CompiledConfig.load(config);
         }
-        _input.close();
-        _output.close();
+        return readConfig(getInput(config));
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Return an Enigma machine configured from the contents CONFIG of
+     *  a configuration file. */
+    private static Machine readConfig(Tokenizer config) {
         try {
             int numRotors, pawls;
             ArrayList<Rotor> allRotors = new ArrayList<>();
 
-            _config.hasNext();
-            readAlphabet(_config.next());
+            Alphabet alphabet = readAlphabet(config.next());
 
-            _config.hasNextInt();
-            numRotors = _config.nextInt();
-            _config.hasNextInt();
-            pawls = _config.nextInt();
+            numRotors = config.nextInt();
+            pawls = config.nextInt();
             if ((numRotors <= pawls) || (pawls < 0)) {
                 throw new EnigmaException("Config File Read Fail");
             }
 
-            while (_config.hasNext("[^()]*")) {
-                allRotors.add(readRotor());
+            while (config.atName()) {
+                allRotors.add(readRotor(config, alphabet));
 
             }
-            _config.close();
 
-            return new Machine(_alphabet, numRotors, pawls, allRotors);
+            return new Machine(alphabet, numRotors, pawls, allRotors);
 
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
@@ -141,27 +265,30 @@ public final class Main {
     }
 
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
+    /** Return a rotor over ALPHABET, reading its description from
+     *  CONFIG. */
+    private static Rotor readRotor(Tokenizer config, Alphabet alphabet) {
         try {
-            String name = null, type = null, cycles = "";
-            name = _config.next();
-            if (!_config.hasNext("[RNM][^()*]*")) {
+            String name = null, type = null;
+            name = config.next();
+            if (!config.atType()) {
                 throw new EnigmaException("Bad Rotor Description");
             }
-            type = _config.next();
+            type = config.next();
 
-            while (_config.hasNext("[(].*[)]")) {
-                cycles = cycles + " " + _config.next();
+            int start = config.position();
+            while (config.atCycles()) {
+                config.skip();
             }
+            Permutation cycles = new Permutation(config.text(), start,
+                                                 config.position(), alphabet);
 
             if (type.charAt(0) == 'M') {
-                return new MovingRotor(name, new Permutation(cycles, _alphabet),
-                        type.substring(1));
+                return new MovingRotor(name, cycles, type.substring(1));
             } else if (type.charAt(0) == 'N') {
-                return new FixedRotor(name, new Permutation(cycles, _alphabet));
+                return new FixedRotor(name, cycles);
             } else if (type.charAt(0) == 'R') {
-                return new Reflector(name, new Permutation(cycles, _alphabet));
+                return new Reflector(name, cycles);
             } else {
                 throw new EnigmaException("Bad Rotor Description");
             }
@@ -170,17 +297,76 @@ public final class Main {
         }
     }
 
+    /** Set M according to SETTINGS, as for setUp, timing it if metrics
+     *  are gathered. */
+    private void timedSetUp(Machine M, String settings) {
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        setUp(M, settings);
+        if (Metrics.ENABLED) {
+            Metrics.setUp(System.nanoTime() - start);
+        }
+    }
+
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
+     *  which must have the format specified in the assignment.  Lines
+     *  that have been applied recently, up to differences in
+     *  whitespace, are not parsed again: their checked rotors, positions
+     *  and plugboard are kept in _setups and restored. */
     private void setUp(Machine M, String settings) {
+        if (_setups == null) {
+            parseSetUp(M, settings);
+            return;
+        }
+        String key = normalize(settings);
+        Machine.Setup setup = _setups.get(key);
+        if (setup != null) {
+            M.restoreSetup(setup);
+        } else {
+            boolean rings = parseSetUp(M, settings);
+            _setups.put(key, M.saveSetup(rings));
+        }
+    }
+
+    /** Return the tokens of SETTINGS separated by single spaces, which
+     *  is SETTINGS itself if it is already so. */
+    private String normalize(String settings) {
+        Tokenizer tokens = _setting.reset(settings);
+        int next = 0;
+        while (tokens.hasNext()) {
+            tokens.skip();
+            if (tokens.start() != next
+                || next > 0 && settings.charAt(next - 1) != ' ') {
+                break;
+            }
+            next = tokens.position() + 1;
+        }
+        if (!tokens.hasNext() && next == settings.length() + 1) {
+            return settings;
+        }
+        tokens.reset(settings);
+        _key.setLength(0);
+        while (tokens.hasNext()) {
+            tokens.skip();
+            if (_key.length() > 0) {
+                _key.append(' ');
+            }
+            _key.append(settings, tokens.start(), tokens.position());
+        }
+        return _key.toString();
+    }
+
+    /** Set M according to SETTINGS, as for setUp, parsing it, and return
+     *  true iff it gives ring settings. */
+    private boolean parseSetUp(Machine M, String settings) {
+        boolean rings = false;
         try {
             String[] rotors = new String[M.numRotors()];
-            String set, perm = "", ring = "";
-            Scanner setting = new Scanner(settings);
-            if (!setting.hasNext("[*]")) {
+            String set;
+            Tokenizer setting = _setting.reset(settings);
+            if (!setting.atStar()) {
                 throw new EnigmaException("Bad Setting Description");
             }
-            setting.next();
+            setting.skip();
 
             for (int x = 0; x < M.numRotors(); x++) {
                 rotors[x] = setting.next();
@@ -190,60 +376,229 @@ public final class Main {
             M.insertRotors(rotors);
 
 
-            if (setting.hasNext("[^()]*")) {
-                ring = setting.next();
-                M.setRing(ring);
+            if (setting.atName()) {
+                M.setRing(setting.next());
+                rings = true;
             }
 
             M.setRotors(set);
 
-            while (setting.hasNext("[(].*[)]")) {
-                perm = perm +  " " + setting.next();
+            int start = setting.position();
+            while (setting.atCycles()) {
+                setting.skip();
             }
 
             if (setting.hasNext()) {
                 throw new EnigmaException("Setup Failure");
             }
 
-            M.setPlugboard(new Permutation(perm, _alphabet));
+            M.setPlugboard(new Permutation(settings, start,
+                                           setting.position(), _alphabet));
 
         } catch (NoSuchElementException excp) {
             throw new EnigmaException("Setup Failure");
         }
+        return rings;
+    }
+
+    /** Make _keystream the keystream store (see KeystreamStore) in the
+     *  directory KEYSTREAM for M, whose rotors have just been set, or
+     *  null if M's alphabet cannot be stored.  Stores opened recently
+     *  are kept in _keystreams, and the digest of M's wiring is kept
+     *  while M's spec is unchanged (as it is when setups are restored;
+     *  see setUp). */
+    private void openKeystream(Machine M) {
+        _keystream = null;
+        _streamOffset = 0;
+        if (!_alphabet.bmp()) {
+            return;
+        }
+        MachineSpec spec = M.spec();
+        if (spec != _keystreamSpec) {
+            _keystreamSpec = spec;
+            _wiring = KeystreamStore.digest(spec);
+        }
+        String key = KeystreamStore.key(spec, _wiring, M.state());
+        _keystream = _keystreams.get(key);
+        if (_keystream == null) {
+            _keystream = KeystreamStore.open(KEYSTREAM, key, _alphabet.size());
+            _keystreams.put(key, _keystream);
+        }
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        for (int x = 0; x < msg.length(); x++) {
-            _output.print(msg.charAt(x));
-            if ((x + 1) % 5 == 0 && x != msg.length() - 1) {
-                _output.print(' ');
+    /** Convert the first LEN characters of MSG with M, as for
+     *  printMessageLine, by indexing into _keystream rather than
+     *  driving M, which is left where the setting line put it.  Return
+     *  the number of characters converted, or -1 if _keystream cannot
+     *  hold them all. */
+    private int printStoredLine(Machine M, char[] msg, int len) {
+        int count = 0;
+        for (int i = 0; i < len; i++) {
+            if (!Machine.isWhitespace(msg[i])) {
+                count += 1;
+            }
+        }
+        long end = _streamOffset + count;
+        if (end > _keystream.capacity()) {
+            return -1;
+        }
+        _keystream.extend(M, end);
+        int k = 0;
+        for (int i = 0; i < len; i++) {
+            char ch = msg[i];
+            if (!Machine.isWhitespace(ch)) {
+                int c = _alphabet.toInt(ch);
+                if (c < 0) {
+                    throw error("Character %c not in alphabet", ch);
+                }
+                msg[k] = _alphabet.toChar(
+                    _keystream.convert(_streamOffset + k, c));
+                k += 1;
+            }
+        }
+        _streamOffset = end;
+        _output.write(msg, 0, count);
+        _output.endLine();
+        return count;
+    }
+
+    /** Convert the first LEN characters of MSG with M and print the
+     *  result in groups of five (except that the last group may have
+     *  fewer letters).  Overwrites MSG.  Return the number of characters
+     *  converted. */
+    private int printMessageLine(Machine M, char[] msg, int len) {
+        int count;
+        if (_keystream != null) {
+            count = printStoredLine(M, msg, len);
+            if (count >= 0) {
+                return count;
+            }
+            M.seek(_streamOffset);
+            _keystream = null;
+        }
+        if (!_alphabet.bmp()) {
+            count = 0;
+            for (int i = 0; i < len;) {
+                int cp = Character.codePointAt(msg, i, len);
+                i += Character.charCount(cp);
+                if (cp > Character.MAX_VALUE
+                    || !Machine.isWhitespace((char) cp)) {
+                    _output.appendCodePoint(M.convertCodePoint(cp));
+                    count += 1;
+                }
+            }
+        } else if (len < PARALLEL_THRESHOLD) {
+            count = M.convert(msg, 0, len, msg, 0);
+            _output.write(msg, 0, count);
+        } else {
+            if (_parallel == null) {
+                _parallel = new ParallelConverter();
             }
+            if (_converted == null || _converted.length < len) {
+                _converted = new char[len];
+            }
+            count = _parallel.convert(M, msg, 0, len, _converted, 0);
+            _output.write(_converted, 0, count);
         }
-        _output.print('\n');
+        _output.endLine();
+        return count;
     }
 
-    /** Check for Invalid Characters in alphabet.
+    /** Print N empty lines. */
+    private void printBlankLines(int n) {
+        for (int i = 0; i < n; i++) {
+            _output.endLine();
+        }
+    }
+
+    /** Check for Invalid Characters in alphabet, and return it.
      * @param alphabet String containing alphabet */
-    private void readAlphabet(String alphabet) {
+    private static Alphabet readAlphabet(String alphabet) {
         if (alphabet.contains("(") || alphabet.contains(")")
                 || alphabet.contains("*")) {
             throw new  EnigmaException("Config File Invalid");
         }
-        _alphabet = new Alphabet(alphabet);
+        return new Alphabet(alphabet);
     }
 
 
+    /** Number of setups kept for reuse (see setUp), by default. */
+    static final int DEFAULT_SETUP_CACHE = 256;
+
+    /** Maximum number of setups kept for reuse, given by the system
+     *  property enigma.setup.cache. */
+    private static final int SETUP_CACHE =
+        Integer.getInteger("enigma.setup.cache", DEFAULT_SETUP_CACHE);
+
+    /** Budget in bytes of the memo of substitutions (see PositionCache),
+     *  given by the system property enigma.memo; 0 for none. */
+    private static final long MEMO = Long.getLong("enigma.memo", 0);
+
+    /** Directory of keystream stores (see KeystreamStore), given by the
+     *  system property enigma.keystream, or null for none. */
+    private static final Path KEYSTREAM =
+        System.getProperty("enigma.keystream") == null ? null
+        : Paths.get(System.getProperty("enigma.keystream"));
+
+    /** Number of keystream stores kept open (see openKeystream). */
+    private static final int KEYSTREAM_CACHE = 64;
+
+    /** True iff files named on the command line may be memory-mapped. */
+    private static final boolean MAPPED = Boolean.getBoolean("enigma.mmap");
+
+    /** Length of the shortest message converted in parallel. */
+    private static final int PARALLEL_THRESHOLD = 1 << 18;
+
+    /** Converter for long messages, created when first needed. */
+    private ParallelConverter _parallel;
+
+    /** Buffer for the output of _parallel. */
+    private char[] _converted;
+
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private LineReader _input;
 
     /** Source of machine configuration. */
-    private Scanner _config;
+    private Tokenizer _config;
+
+    /** Tokenizer of the current setting line, reused from line to line. */
+    private final Tokenizer _setting = new Tokenizer("");
+
+    /** Setups of recent setting lines, by normalized line, or null if
+     *  the system property enigma.setup.cache is 0. */
+    private final LruCache<String, Machine.Setup> _setups =
+        SETUP_CACHE > 0 ? new LruCache<>(SETUP_CACHE) : null;
+
+    /** Keystream stores opened recently, by key. */
+    private final LruCache<String, KeystreamStore> _keystreams =
+        new LruCache<>(KEYSTREAM_CACHE);
+
+    /** The keystream store of the current setting line, or null if
+     *  messages are to be converted by the machine. */
+    private KeystreamStore _keystream;
+
+    /** The spec last given to openKeystream, and the digest of its
+     *  wiring (see KeystreamStore.digest). */
+    private MachineSpec _keystreamSpec;
+    private byte[] _wiring;
+
+    /** Number of characters converted since the current setting line. */
+    private long _streamOffset;
+
+    /** Buffer for normalized setting lines. */
+    private final StringBuilder _key = new StringBuilder();
+
+    /** Name of the compiled configuration file, if ARGS[0] names one,
+     *  and otherwise null. */
+    private String _compiledName;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private GroupedWriter _output;
+
+    /** Names of the input and output files when they are to be
+     *  memory-mapped, and otherwise null. */
+    private String[] _mappedNames;
 }
@@ -0,0 +1,313 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Memory-mapped input and output files for Main, for alphabets whose
+ *  characters are each encoded as a single byte.  Messages are converted
+ *  directly from the mapped input bytes into the mapped output bytes.
+ *  Since the size of the output is fixed by the line structure of the
+ *  input, it is measured in a first pass so that the output file can be
+ *  sized before it is written.  Output is cut after its last complete
+ *  line when the files are closed, so that a run stopped by an error
+ *  leaves what the streaming path would have.  Both files are mapped in
+ *  windows, so that they may be of any size.
+ *  @author Manavjot Singh
+ */
+class MappedFiles {
+
+    /** Return true iff every character of ALPHABET is encoded by the
+     *  default character set as the single byte holding its value. */
+    static boolean supports(Alphabet alphabet) {
+        byte[] ascii = new byte[ASCII];
+        for (int i = 0; i < ASCII; i++) {
+            ascii[i] = (byte) i;
+        }
+        String chars = new String(ascii, StandardCharsets.US_ASCII);
+        if (!Arrays.equals(chars.getBytes(Charset.defaultCharset()), ascii)) {
+            return false;
+        }
+        for (int i = 0; i < alphabet.size(); i++) {
+            if (alphabet.toCodePoint(i) >= ASCII) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Mapped files reading messages from the file named INPUT and
+     *  writing their conversions to the file named OUTPUT, both encoded
+     *  over ALPHABET, which must be supported (see supports). */
+    MappedFiles(String input, String output, Alphabet alphabet) {
+        try {
+            _input = new RandomAccessFile(input, "r").getChannel();
+        } catch (IOException excp) {
+            throw error("could not open %s", input);
+        }
+        try {
+            _output = new RandomAccessFile(output, "rw").getChannel();
+            _output.truncate(0);
+        } catch (IOException excp) {
+            throw error("could not open %s", output);
+        }
+        _index = new int[1 << Byte.SIZE];
+        Arrays.fill(_index, -1);
+        _letters = new byte[alphabet.size()];
+        for (int i = 0; i < alphabet.size(); i++) {
+            _index[alphabet.toChar(i)] = i;
+            _letters[i] = (byte) alphabet.toChar(i);
+        }
+    }
+
+    /** Return a fresh source of the lines of the input, which becomes
+     *  the one whose lines message() converts. */
+    LineSource lines() {
+        _lines = new Lines();
+        return _lines;
+    }
+
+    /** Return the number of bytes of output that the input produces, or
+     *  that it produces before an error in its line structure.  The
+     *  conversion stops at the same error, so it is not reported
+     *  here. */
+    long measure() {
+        Lines lines = new Lines();
+        long[] size = new long[1];
+        try {
+            new InputProcessor() {
+                @Override
+                void setting(String settings) {
+                }
+
+                @Override
+                void message() {
+                    long n = 0;
+                    for (long i = lines._start; i < lines._end; i++) {
+                        if (!Machine.isWhitespace(lines.charAt(i))) {
+                            n += 1;
+                        }
+                    }
+                    size[0] += n
+                        + Math.max(0, (n - 1) / GroupedWriter.GROUP) + 1;
+                }
+
+                @Override
+                void blankLines(int n) {
+                    size[0] += n;
+                }
+            }.run(lines);
+        } catch (EnigmaException excp) {
+            return size[0];
+        }
+        return size[0];
+    }
+
+    /** Prepare to write SIZE bytes of output to the output file, which
+     *  was emptied when opened.  Mapping the windows extends it. */
+    void allocate(long size) {
+        _outputSize = size;
+    }
+
+    /** Convert the current line of the source last returned by lines()
+     *  with M, and write it out in groups of five.  Return the number of
+     *  characters converted. */
+    int message(Machine M) {
+        int count = 0;
+        for (long i = _lines._start; i < _lines._end; i++) {
+            char ch = _lines.charAt(i);
+            if (!Machine.isWhitespace(ch)) {
+                int c = _index[ch];
+                if (c < 0) {
+                    throw error("Character %c not in alphabet", ch);
+                }
+                if (_column > 0 && _column % GroupedWriter.GROUP == 0) {
+                    put((byte) ' ');
+                }
+                put(_letters[M.convert(c)]);
+                _column += 1;
+                count += 1;
+            }
+        }
+        blankLines(1);
+        return count;
+    }
+
+    /** Write N line ends. */
+    void blankLines(int n) {
+        for (int i = 0; i < n; i++) {
+            put((byte) '\n');
+        }
+        _column = 0;
+        _lineEnd = _outPosition;
+    }
+
+    /** Write B at the next position of the output. */
+    private void put(byte b) {
+        if (_outWindow == null || !_outWindow.hasRemaining()) {
+            if (_outPosition >= _outputSize) {
+                throw error("output larger than expected");
+            }
+            _outWindow = map(_output, FileChannel.MapMode.READ_WRITE,
+                             _outPosition, _outputSize);
+        }
+        _outWindow.put(b);
+        _outPosition += 1;
+    }
+
+    /** Close both files, cutting the output after its last complete
+     *  line, so that a conversion stopped by an error leaves what Main
+     *  would have written without memory maps. */
+    void close() {
+        try {
+            _input.close();
+            _outWindow = null;
+            _output.truncate(_lineEnd);
+            _output.close();
+        } catch (IOException excp) {
+            throw error("could not close files");
+        }
+    }
+
+    /** Return the window of CHANNEL, of size SIZE, mapped in MODE that
+     *  starts at POSITION. */
+    private static MappedByteBuffer map(FileChannel channel,
+                                        FileChannel.MapMode mode,
+                                        long position, long size) {
+        try {
+            return channel.map(mode, position,
+                               Math.min(WINDOW, size - position));
+        } catch (IOException excp) {
+            throw error("could not map file");
+        }
+    }
+
+    /** The lines of the input, read from successive windows of it. */
+    private class Lines extends LineSource {
+
+        /** Lines from the start of the input. */
+        Lines() {
+            try {
+                _size = _input.size();
+            } catch (IOException excp) {
+                throw error("could not read input");
+            }
+        }
+
+        @Override
+        boolean next() {
+            _start = _end = _next;
+            _newline = false;
+            while (_next < _size) {
+                char ch = charAt(_next++);
+                if (ch == '\n') {
+                    _newline = true;
+                    return true;
+                } else if (ch == '\r') {
+                    if (_next < _size && charAt(_next) == '\n') {
+                        _next += 1;
+                    }
+                    return true;
+                }
+                _end = _next;
+            }
+            return _end > _start;
+        }
+
+        /** Return the length of the current line, or Integer.MAX_VALUE
+         *  if it is longer.  Only classification depends on this. */
+        @Override
+        int length() {
+            return (int) Math.min(_end - _start, Integer.MAX_VALUE);
+        }
+
+        @Override
+        char charAt(int k) {
+            return charAt(_start + k);
+        }
+
+        /** Return the character at byte POSITION of the input. */
+        char charAt(long position) {
+            if (_window == null || position < _windowStart
+                || position >= _windowStart + _window.limit()) {
+                _window = map(_input, FileChannel.MapMode.READ_ONLY,
+                              position, _size);
+                _windowStart = position;
+            }
+            return (char) (_window.get((int) (position - _windowStart))
+                           & BYTE_MASK);
+        }
+
+        @Override
+        boolean endsWithNewline() {
+            return _newline;
+        }
+
+        @Override
+        public String toString() {
+            byte[] line = new byte[length()];
+            for (int k = 0; k < line.length; k++) {
+                line[k] = (byte) charAt(k);
+            }
+            return new String(line, Charset.defaultCharset());
+        }
+
+        /** Size of the input. */
+        private final long _size;
+        /** Current window of the input. */
+        private MappedByteBuffer _window;
+        /** Position of _window in the input. */
+        private long _windowStart;
+        /** Bounds of the current line. */
+        private long _start, _end;
+        /** Position of the next line. */
+        private long _next;
+        /** True iff the current line ended with a lone newline. */
+        private boolean _newline;
+    }
+
+    /** Number of ASCII characters. */
+    private static final int ASCII = 128;
+
+    /** Mask selecting the bits of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Largest window mapped at once. */
+    private static final long WINDOW = 1 << 28;
+
+    /** Input file. */
+    private final FileChannel _input;
+
+    /** Output file. */
+    private final FileChannel _output;
+
+    /** Alphabet index of each byte, or -1. */
+    private final int[] _index;
+
+    /** Byte of each alphabet index. */
+    private final byte[] _letters;
+
+    /** Lines whose messages are being converted. */
+    private Lines _lines;
+
+    /** Total size of the output. */
+    private long _outputSize;
+
+    /** Current window of the output. */
+    private MappedByteBuffer _outWindow;
+
+    /** Position of the next byte of output. */
+    private long _outPosition;
+
+    /** Position just past the last complete line of output. */
+    private long _lineEnd;
+
+    /** Converted characters written to the current output line. */
+    private long _column;
+}
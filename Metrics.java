@@ -0,0 +1,308 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** Counts and timings of the work of Main: characters converted,
+ *  message lines processed and setting lines applied, and histograms of
+ *  the times taken to read the configuration, apply each setting line
+ *  and convert each message line, with the memory taken by rotated
+ *  rotor wirings (see RotatedTables) and the hits and misses of memos of
+ *  substitutions (see PositionCache).  They are exposed through the MBean
+ *  enigma:type=Metrics (see EnigmaMetricsMBean), as Flight Recorder
+ *  events (in the category Enigma, recorded when a recording is
+ *  running), and in a summary of throughput printed on the standard
+ *  error every few seconds and at the end of a run.
+ *
+ *  Metrics are gathered only when the system property enigma.metrics is
+ *  true.  Callers test ENABLED before timing anything; since it is a
+ *  constant, the compiler removes that code entirely otherwise.  The
+ *  system property enigma.metrics.interval gives the number of seconds
+ *  between summaries (0 for none but the last).
+ *  @author Manavjot Singh
+ */
+final class Metrics {
+
+    /** Not instantiable. */
+    private Metrics() {
+    }
+
+    /** True iff metrics are gathered. */
+    static final boolean ENABLED = Boolean.getBoolean("enigma.metrics");
+
+    /** Record that reading a configuration of NUMROTORS available rotors
+     *  took NANOS nanoseconds. */
+    static void readConfig(long nanos, int numRotors) {
+        READ_CONFIG.record(nanos);
+        ConfigEvent event = new ConfigEvent();
+        event.rotors = numRotors;
+        event.elapsed = nanos;
+        event.commit();
+    }
+
+    /** Record that applying a setting line took NANOS nanoseconds. */
+    static void setUp(long nanos) {
+        SETUPS.increment();
+        SET_UP.record(nanos);
+        SetUpEvent event = new SetUpEvent();
+        event.elapsed = nanos;
+        event.commit();
+    }
+
+    /** Record that converting a message line of CHARS characters took
+     *  NANOS nanoseconds. */
+    static void message(long nanos, long chars) {
+        MESSAGES.increment();
+        CHARACTERS.add(chars);
+        CONVERT.record(nanos);
+        ConvertEvent event = new ConvertEvent();
+        event.characters = chars;
+        event.elapsed = nanos;
+        event.commit();
+    }
+
+    /** Record a lookup in a memo of substitutions (see PositionCache)
+     *  that was a hit iff HIT. */
+    static void memo(boolean hit) {
+        (hit ? MEMO_HITS : MEMO_MISSES).increment();
+    }
+
+    /** Print a summary of the whole run so far on OUT. */
+    static void summary(PrintStream out) {
+        long nanos = System.nanoTime() - _started;
+        out.printf("enigma: %d messages, %d characters in %.3f s "
+                   + "(%.0f chars/s); config %.1f ms; setUp p99 %d us; "
+                   + "convert p99 %d us, max %d us; "
+                   + "rotated tables %d KiB; memo %d hits, %d misses%n",
+                   MESSAGES.sum(), CHARACTERS.sum(), nanos * 1e-9,
+                   CHARACTERS.sum() / Math.max(nanos * 1e-9, 1e-9),
+                   READ_CONFIG.mean() * 1e-6,
+                   micros(SET_UP.percentile(P99)),
+                   micros(CONVERT.percentile(P99)),
+                   micros(CONVERT.max()),
+                   RotatedTables.bytes() / KIB, MEMO_HITS.sum(),
+                   MEMO_MISSES.sum());
+    }
+
+    /** Print the throughput since the last report on the standard
+     *  error. */
+    private static synchronized void report() {
+        long now = System.nanoTime(), chars = CHARACTERS.sum();
+        double secs = (now - _reportedAt) * 1e-9;
+        System.err.printf("enigma: %d messages, %d characters "
+                          + "(%.0f chars/s in the last %.0f s); "
+                          + "convert p99 %d us%n",
+                          MESSAGES.sum(), chars,
+                          (chars - _reportedChars) / secs, secs,
+                          micros(CONVERT.percentile(P99)));
+        _reportedAt = now;
+        _reportedChars = chars;
+    }
+
+    /** Return NANOS in whole microseconds. */
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+
+    /** Register the MBean and start the periodic summary. */
+    private static void start() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new StandardMBean(new Bean(), EnigmaMetricsMBean.class),
+                new ObjectName("enigma:type=Metrics"));
+        } catch (JMException excp) {
+            System.err.printf("enigma: metrics MBean not registered: %s%n",
+                              excp.getMessage());
+        }
+        int interval = Integer.getInteger("enigma.metrics.interval",
+                                          DEFAULT_INTERVAL);
+        if (interval > 0) {
+            ScheduledExecutorService reporter =
+                Executors.newSingleThreadScheduledExecutor(task -> {
+                    Thread thread = new Thread(task, "enigma-metrics");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            reporter.scheduleAtFixedRate(Metrics::report, interval,
+                                         interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /** The MBean view of the metrics. */
+    private static final class Bean implements EnigmaMetricsMBean {
+
+        @Override
+        public long getCharactersConverted() {
+            return CHARACTERS.sum();
+        }
+
+        @Override
+        public long getMessagesProcessed() {
+            return MESSAGES.sum();
+        }
+
+        @Override
+        public long getSetupsApplied() {
+            return SETUPS.sum();
+        }
+
+        @Override
+        public double getConvertMeanMicros() {
+            return CONVERT.mean() / 1000;
+        }
+
+        @Override
+        public long getConvertP99Micros() {
+            return micros(CONVERT.percentile(P99));
+        }
+
+        @Override
+        public long getConvertMaxMicros() {
+            return micros(CONVERT.max());
+        }
+
+        @Override
+        public double getSetUpMeanMicros() {
+            return SET_UP.mean() / 1000;
+        }
+
+        @Override
+        public long getSetUpP99Micros() {
+            return micros(SET_UP.percentile(P99));
+        }
+
+        @Override
+        public long getSetUpMaxMicros() {
+            return micros(SET_UP.max());
+        }
+
+        @Override
+        public double getReadConfigMeanMicros() {
+            return READ_CONFIG.mean() / 1000;
+        }
+
+        @Override
+        public long getReadConfigMaxMicros() {
+            return micros(READ_CONFIG.max());
+        }
+
+        @Override
+        public long getRotatedTableBytes() {
+            return RotatedTables.bytes();
+        }
+
+        @Override
+        public long getRotatedTableLimit() {
+            return RotatedTables.LIMIT;
+        }
+
+        @Override
+        public long getMemoHits() {
+            return MEMO_HITS.sum();
+        }
+
+        @Override
+        public long getMemoMisses() {
+            return MEMO_MISSES.sum();
+        }
+
+        @Override
+        public void reset() {
+            CHARACTERS.reset();
+            MESSAGES.reset();
+            SETUPS.reset();
+            CONVERT.reset();
+            SET_UP.reset();
+            READ_CONFIG.reset();
+            MEMO_HITS.reset();
+            MEMO_MISSES.reset();
+        }
+    }
+
+    /** The reading of a configuration file. */
+    @Name("enigma.ReadConfig")
+    @Label("Read Configuration")
+    @Category("Enigma")
+    static final class ConfigEvent extends Event {
+        /** Number of available rotors. */
+        @Label("Rotors")
+        int rotors;
+        /** Time taken. */
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    /** The application of a setting line. */
+    @Name("enigma.SetUp")
+    @Label("Apply Setting Line")
+    @Category("Enigma")
+    static final class SetUpEvent extends Event {
+        /** Time taken. */
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    /** The conversion of a message line. */
+    @Name("enigma.Convert")
+    @Label("Convert Message Line")
+    @Category("Enigma")
+    static final class ConvertEvent extends Event {
+        /** Number of characters converted. */
+        @Label("Characters")
+        long characters;
+        /** Time taken. */
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    /** Default number of seconds between summaries. */
+    static final int DEFAULT_INTERVAL = 10;
+
+    /** The percentile reported. */
+    private static final double P99 = 0.99;
+
+    /** Bytes in a kibibyte. */
+    private static final long KIB = 1024;
+
+    /** Counts of characters, messages and setting lines. */
+    private static final LongAdder CHARACTERS = new LongAdder(),
+        MESSAGES = new LongAdder(), SETUPS = new LongAdder();
+
+    /** Hits and misses of memos of substitutions. */
+    private static final LongAdder MEMO_HITS = new LongAdder(),
+        MEMO_MISSES = new LongAdder();
+
+    /** Times to convert a message line, apply a setting line and read
+     *  a configuration. */
+    private static final LatencyHistogram CONVERT = new LatencyHistogram(),
+        SET_UP = new LatencyHistogram(), READ_CONFIG = new LatencyHistogram();
+
+    /** Time at which metrics started to be gathered. */
+    private static final long _started = System.nanoTime();
+
+    /** Time and character count of the last periodic report. */
+    private static long _reportedAt = _started, _reportedChars;
+
+    static {
+        if (ENABLED) {
+            start();
+        }
+    }
+}
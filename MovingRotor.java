@@ -1,7 +1,5 @@
 package enigma;
 
-import java.util.ArrayList;
-
 import static enigma.EnigmaException.*;
 
 /** Class that represents a rotating rotor in the enigma machine.
@@ -16,11 +14,14 @@ class MovingRotor extends Rotor {
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _rotated = false;
-        _notches = new ArrayList<Integer>();
-        for (char i : notches.toCharArray()) {
-            _notches.add(perm.alphabet().toInt(i));
+        boolean[] table = new boolean[size()];
+        for (int i : notches.codePoints().toArray()) {
+            int notch = perm.alphabet().toIndex(i);
+            if (notch >= 0) {
+                table[notch] = true;
+            }
         }
+        _notches = Odometer.mask(table);
     }
 
 
@@ -31,39 +32,24 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        if (_notches.contains(wrap(setting() + ring()))) {
-            return true;
-        }
-        return false;
+        return Odometer.notch(_notches, wrap(setting() + ring())) != 0;
     }
 
     @Override
-    void notchAdvance() {
-        _rotated = true;
-        set(setting() + 1);
+    boolean[] notches() {
+        boolean[] table = super.notches();
+        for (int p = 0; p < table.length; p++) {
+            table[p] = Odometer.notch(_notches, p) != 0;
+        }
+        return table;
     }
 
     @Override
     void advance() {
-        if (!_rotated) {
-            if (_right == null) {
-                set(setting() + 1);
-                _rotated = true;
-            } else {
-                if (_right.atNotch()) {
-                    set(setting() + 1);
-                    _right.notchAdvance();
-                    _rotated = true;
-                }
-            }
-        }
-        _rotated = false;
+        set(setting() + 1);
     }
 
-    /** Keep Track Of Rotor Notches. */
-    private ArrayList<Integer> _notches;
-
-    /** Check if Rotor has been rotated this turn. */
-    private Boolean _rotated;
+    /** Keep Track Of Rotor Notches, as a bit mask (see Odometer.mask). */
+    private final long[] _notches;
 
 }
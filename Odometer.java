@@ -0,0 +1,319 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** Stepping arithmetic for the pawl-driven rotors of a machine, done on
+ *  arrays of positions rather than on Rotor objects.  A position is the
+ *  index of the character showing in a rotor's window (its setting plus
+ *  its ring), and rotors are numbered from the leftmost pawl slot.
+ *  @author Manavjot Singh
+ */
+final class Odometer {
+
+    /** Not instantiable. */
+    private Odometer() {
+    }
+
+    /** Advance POS by one keypress, where NOTCHES[j][p] is true iff rotor
+     *  J has a notch at position p, and SIZE is the alphabet size.  A
+     *  rotor steps if it is the rightmost, if the rotor to its right is
+     *  at a notch, or if it is itself at a notch and the rotor to its
+     *  left (a pawl rotor that was not itself carried) steps with it. */
+    static void step(int[] pos, boolean[][] notches, int size) {
+        step(pos, 0, notches, size);
+    }
+
+    /** As for step(POS, FROM, NOTCHES, SIZE), where MASKS[j] is the
+     *  notch mask of rotor J (see mask).  Which rotors step is worked out
+     *  in one pass with bit arithmetic on 0/1 flags rather than tests and
+     *  branches, in time that does not depend on how many notches any
+     *  rotor has.  This is the form used for every keypress. */
+    static void step(int[] pos, int from, long[][] masks, int size) {
+        int last = pos.length - 1;
+        if (last < from) {
+            return;
+        }
+        int carried = 0;
+        for (int j = from; j < last; j++) {
+            int carry = notch(masks[j + 1], pos[j + 1]) & ~carried;
+            int p = pos[j] + (carried | carry);
+            pos[j] = p == size ? 0 : p;
+            carried = carry;
+        }
+        int p = pos[last] + 1;
+        pos[last] = p == size ? 0 : p;
+    }
+
+    /** Return NOTCHES, a table whose entry p is true iff a rotor is at a
+     *  notch at position p, as a bit mask for step: bit p % 64 of word
+     *  p / 64 is set iff entry p is true. */
+    static long[] mask(boolean[] notches) {
+        long[] result = new long[(notches.length + Long.SIZE - 1) / Long.SIZE];
+        for (int p = 0; p < notches.length; p++) {
+            if (notches[p]) {
+                result[p / Long.SIZE] |= 1L << p;
+            }
+        }
+        return result;
+    }
+
+    /** Return 1 if bit P of MASK (see mask) is set, and 0 otherwise. */
+    static int notch(long[] mask, int p) {
+        return (int) (mask[p >>> LOG_WORD] >>> p) & 1;
+    }
+
+    /** As for step(POS, NOTCHES, SIZE), but taking only the rotors from
+     *  FROM onward of POS (and NOTCHES) to be under pawls. */
+    static void step(int[] pos, int from, boolean[][] notches, int size) {
+        boolean carried = false;
+        for (int j = from; j < pos.length; j++) {
+            boolean carry = !carried && j + 1 < pos.length
+                && notches[j + 1][pos[j + 1]];
+            if (carried || carry || j == pos.length - 1) {
+                pos[j] = pos[j] + 1 == size ? 0 : pos[j] + 1;
+            }
+            carried = carry;
+        }
+    }
+
+    /** Advance POS by N keypresses (see step), in time that depends on
+     *  the number of rotors rather than on N.  Falls back to stepping
+     *  one keypress at a time when a rotor that can double-step has two
+     *  adjacent notches, since its double steps can then coincide with
+     *  carries from the right. */
+    static void advance(int[] pos, boolean[][] notches, int size, long n) {
+        int m = pos.length;
+        if (m == 0 || n <= 0) {
+            return;
+        }
+        if (m >= 3) {
+            for (int j = 1; j < m; j++) {
+                if (adjacentNotches(notches[j], size)) {
+                    for (; n > 0; n--) {
+                        step(pos, notches, size);
+                    }
+                    return;
+                }
+            }
+            for (; n > 0 && !settled(pos, notches); n--) {
+                step(pos, notches, size);
+            }
+            if (n == 0) {
+                return;
+            }
+        }
+        new Jump(pos, notches, size, n).run();
+    }
+
+    /** Return true iff NOTCH (over SIZE positions) has two cyclically
+     *  adjacent notches. */
+    private static boolean adjacentNotches(boolean[] notch, int size) {
+        for (int p = 0; p < size; p++) {
+            if (notch[p] && notch[(p + 1) % size]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff no two neighboring rotors of POS that can both
+     *  double-step are at notches, so that no double step can coincide
+     *  with or suppress another. */
+    private static boolean settled(int[] pos, boolean[][] notches) {
+        for (int j = 1; j + 1 < pos.length; j++) {
+            if (notches[j][pos[j]] && notches[j + 1][pos[j + 1]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Log base 2 of the number of bits in a word of a notch mask. */
+    private static final int LOG_WORD = 6;
+
+    /** The closed-form advance of a settled set of rotors.  Rotors are
+     *  numbered here by level, counting from the rightmost (level 0).
+     *  The rightmost rotor steps on every keypress.  Every other rotor
+     *  steps once per carry from its right, and a rotor between two
+     *  others that lands on a notch double-steps on the next keypress,
+     *  passing the carry on.  Without adjacent notches, each carry thus
+     *  moves such a rotor to its next position without a notch, so
+     *  positions and carries can be counted per level rather than
+     *  replayed.  The only subtlety is at the end of the run, where a
+     *  double step due on keypress N has not yet happened. */
+    private static class Jump {
+
+        /** Jump POS (see Odometer.advance) forward N keypresses. */
+        Jump(int[] pos, boolean[][] notches, int size, long n) {
+            _pos = pos;
+            _notches = notches;
+            _size = size;
+            _n = n;
+            _m = pos.length;
+            _carries = new long[_m];
+            _pending = new boolean[_m];
+            _start = new int[_m];
+            _free = new int[_m][];
+            _landings = new int[_m][];
+            _atLast = new boolean[_m][_m + 1];
+        }
+
+        /** Perform the jump. */
+        void run() {
+            int[] result = new int[_m];
+            result[0] = (int) ((at(0) + _n % _size) % _size);
+            if (_m > 1) {
+                _carries[1] = count(_notches[slot(0)], at(0), _n);
+                for (int d = 0; d <= _m; d++) {
+                    long t = _n - 1 - d;
+                    _atLast[1][d] =
+                        t >= 0 && _notches[slot(0)][(int) ((at(0) + t)
+                                                         % _size)];
+                }
+            }
+            for (int k = 1; k < _m - 1; k++) {
+                prepare(k);
+                for (int d = 0; d + 1 <= _m; d++) {
+                    long t = _n - 1 - d;
+                    _atLast[k + 1][d] = t >= 0
+                        && (_pending[k] && t == 0
+                            || t >= 1 && _atLast[k][d + 1]
+                               && landsOnNotch(k, index(k, d + 1)));
+                }
+                boolean cut = _atLast[k][0] && landsOnNotch(k, _carries[k]);
+                _carries[k + 1] = (_pending[k] ? 1 : 0)
+                    + landings(k, _carries[k]) - (cut ? 1 : 0);
+                if (cut) {
+                    result[k] = (free(k, _carries[k] - 1) + 1) % _size;
+                } else {
+                    result[k] = free(k, _carries[k]);
+                }
+            }
+            if (_m > 1) {
+                result[_m - 1] =
+                    (int) ((at(_m - 1) + _carries[_m - 1] % _size) % _size);
+            }
+            for (int k = 0; k < _m; k++) {
+                _pos[slot(k)] = result[k];
+            }
+        }
+
+        /** Return the slot index in _pos of the rotor at level K. */
+        private int slot(int k) {
+            return _m - 1 - k;
+        }
+
+        /** Return the starting position of the rotor at level K. */
+        private int at(int k) {
+            return _pos[slot(k)];
+        }
+
+        /** Return the number of keypresses t in 0 .. N-1 at which a rotor
+         *  starting at P and stepping every keypress shows a notch in
+         *  NOTCH. */
+        private long count(boolean[] notch, int p, long n) {
+            long total = 0, partial = 0;
+            for (int i = 0; i < _size; i++) {
+                if (notch[i]) {
+                    total += 1;
+                }
+            }
+            long rem = n % _size;
+            for (int i = 0; i < rem; i++) {
+                if (notch[(p + i) % _size]) {
+                    partial += 1;
+                }
+            }
+            return n / _size * total + partial;
+        }
+
+        /** Record the positions without notches of the rotor at level K
+         *  (1 <= K < _m - 1) in order, which of them precede a notch,
+         *  and where the rotor starts among them. */
+        private void prepare(int k) {
+            boolean[] notch = _notches[slot(k)];
+            int p = at(k);
+            if (notch[p]) {
+                _pending[k] = true;
+                p = (p + 1) % _size;
+            }
+            int[] free = new int[_size], index = new int[_size];
+            int[] landings = new int[_size + 1];
+            int u = 0;
+            for (int i = 0; i < _size; i++) {
+                if (!notch[i]) {
+                    index[i] = u;
+                    free[u] = i;
+                    landings[u + 1] = landings[u]
+                        + (notch[(i + 1) % _size] ? 1 : 0);
+                    u += 1;
+                }
+            }
+            _free[k] = Arrays.copyOf(free, u);
+            _landings[k] = Arrays.copyOf(landings, u + 1);
+            _start[k] = index[p];
+        }
+
+        /** Return the position without a notch reached by the rotor at
+         *  level K after its first I carries have been fully applied. */
+        private int free(int k, long i) {
+            int[] free = _free[k];
+            return free[(int) ((_start[k] + i) % free.length)];
+        }
+
+        /** Return true iff carry number I (numbering from 1) into the
+         *  rotor at level K lands it on a notch. */
+        private boolean landsOnNotch(int k, long i) {
+            return i >= 1
+                && _notches[slot(k)][(free(k, i - 1) + 1) % _size];
+        }
+
+        /** Return how many of the first I carries into the rotor at level
+         *  K land it on a notch. */
+        private long landings(int k, long i) {
+            int[] landings = _landings[k];
+            int u = landings.length - 1, r = _start[k];
+            long end = r + i;
+            return end / u * landings[u] + landings[(int) (end % u)]
+                - landings[r];
+        }
+
+        /** Return the number (from 1) of the carry into the rotor at
+         *  level K that arrives on keypress _n - 1 - D, given that one
+         *  does. */
+        private long index(int k, int d) {
+            long later = 0;
+            for (int e = 0; e < d; e++) {
+                if (_atLast[k][e]) {
+                    later += 1;
+                }
+            }
+            return _carries[k] - later;
+        }
+
+        /** Positions being advanced, by slot. */
+        private final int[] _pos;
+        /** Notch tables, by slot. */
+        private final boolean[][] _notches;
+        /** Alphabet size. */
+        private final int _size;
+        /** Number of keypresses. */
+        private final long _n;
+        /** Number of rotors. */
+        private final int _m;
+        /** Number of carries into each level during the run. */
+        private final long[] _carries;
+        /** True for a level that starts at a notch, and so double-steps
+         *  on the first keypress. */
+        private final boolean[] _pending;
+        /** Index in _free of each level's first position. */
+        private final int[] _start;
+        /** Positions without notches of each level, in order. */
+        private final int[][] _free;
+        /** Prefix counts of positions in _free that precede a notch. */
+        private final int[][] _landings;
+        /** _atLast[k][d] is true iff the rotor at level K receives a
+         *  carry on keypress _n - 1 - d. */
+        private final boolean[][] _atLast;
+    }
+}
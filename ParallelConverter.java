@@ -0,0 +1,172 @@
+package enigma;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** Converts long messages on several threads at once.  The message is
+ *  cut into chunks; each chunk is converted by its own copy of the
+ *  machine, advanced directly to the chunk's offset in the message, and
+ *  the results are placed in order, so that the output is exactly that
+ *  of converting the whole message with the machine itself.
+ *  @author Manavjot Singh
+ */
+class ParallelConverter {
+
+    /** A converter that runs on POOL, handing each task CHUNK characters
+     *  of input. */
+    ParallelConverter(ForkJoinPool pool, int chunk) {
+        if (chunk <= 0) {
+            throw error("chunk size must be positive");
+        }
+        _pool = pool;
+        _chunk = chunk;
+    }
+
+    /** A converter that runs on the common pool with a default chunk
+     *  size. */
+    ParallelConverter() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK);
+    }
+
+    /** Returns the encoding/decoding of MSG by MACHINE, leaving MACHINE
+     *  advanced past it, as for MACHINE.convert(MSG). */
+    String convert(Machine machine, String msg) {
+        char[] src = msg.toCharArray(), dst = new char[src.length];
+        int n = convert(machine, src, 0, src.length, dst, 0);
+        return new String(dst, 0, n);
+    }
+
+    /** Convert the LEN characters of SRC starting at OFF with MACHINE
+     *  into DST starting at DSTOFF, as for MACHINE.convert(SRC, OFF, LEN,
+     *  DST, DSTOFF), and return the number of characters written.  DST
+     *  must not overlap the input. */
+    int convert(Machine machine, char[] src, int off, int len,
+                char[] dst, int dstOff) {
+        int chunks = (int) (((long) len + _chunk - 1) / _chunk);
+        int[] offsets = new int[chunks + 1];
+        _pool.invoke(new Count(src, off, len, offsets, 0, chunks));
+        for (int i = 0; i < chunks; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        _pool.invoke(new Convert(machine, src, off, len, dst, dstOff,
+                                 offsets, 0, chunks));
+        machine.advanceBy(offsets[chunks]);
+        return offsets[chunks];
+    }
+
+    /** Default number of input characters per chunk. */
+    static final int DEFAULT_CHUNK = 1 << 16;
+
+    /** Counts the characters to be converted in a range of chunks. */
+    private class Count extends RecursiveAction {
+
+        /** Store into COUNTS[i + 1] the number of characters that are not
+         *  whitespace in chunk i of the LEN characters of SRC at OFF, for
+         *  LO <= i < HI. */
+        Count(char[] src, int off, int len, int[] counts, int lo, int hi) {
+            _src = src;
+            _off = off;
+            _len = len;
+            _counts = counts;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Count(_src, _off, _len, _counts, _lo, mid),
+                          new Count(_src, _off, _len, _counts, mid, _hi));
+                return;
+            }
+            for (int c = _lo; c < _hi; c++) {
+                int n = 0;
+                for (int i = start(c), end = start(c + 1); i < end; i++) {
+                    if (!Machine.isWhitespace(_src[i])) {
+                        n += 1;
+                    }
+                }
+                _counts[c + 1] = n;
+            }
+        }
+
+        /** Return the index in _src of the start of chunk C. */
+        private int start(int c) {
+            return _off + (int) Math.min((long) c * _chunk, _len);
+        }
+
+        /** Input characters. */
+        private final char[] _src;
+        /** Offset and length of the message in _src. */
+        private final int _off, _len;
+        /** Per-chunk counts. */
+        private final int[] _counts;
+        /** Range of chunks. */
+        private final int _lo, _hi;
+    }
+
+    /** Converts a range of chunks. */
+    private class Convert extends RecursiveAction {
+
+        /** Convert chunks LO <= i < HI of the LEN characters of SRC at
+         *  OFF with copies of MACHINE into DST, where chunk i starts at
+         *  DSTOFF + OFFSETS[i] in DST and OFFSETS[i] characters into the
+         *  message. */
+        Convert(Machine machine, char[] src, int off, int len,
+                char[] dst, int dstOff, int[] offsets, int lo, int hi) {
+            _machine = machine;
+            _src = src;
+            _off = off;
+            _len = len;
+            _dst = dst;
+            _dstOff = dstOff;
+            _offsets = offsets;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Convert(_machine, _src, _off, _len, _dst,
+                                      _dstOff, _offsets, _lo, mid),
+                          new Convert(_machine, _src, _off, _len, _dst,
+                                      _dstOff, _offsets, mid, _hi));
+                return;
+            }
+            Machine machine = _machine.copy();
+            machine.advanceBy(_offsets[_lo]);
+            for (int c = _lo; c < _hi; c++) {
+                long start = (long) c * _chunk;
+                int len = (int) Math.min(_chunk, _len - start);
+                machine.convert(_src, _off + (int) start, len,
+                                _dst, _dstOff + _offsets[c]);
+            }
+        }
+
+        /** Machine at the start of the message. */
+        private final Machine _machine;
+        /** Input characters. */
+        private final char[] _src;
+        /** Offset and length of the message in _src. */
+        private final int _off, _len;
+        /** Output characters. */
+        private final char[] _dst;
+        /** Start of output in _dst. */
+        private final int _dstOff;
+        /** Output offset of each chunk. */
+        private final int[] _offsets;
+        /** Range of chunks. */
+        private final int _lo, _hi;
+    }
+
+    /** Pool running the conversions. */
+    private final ForkJoinPool _pool;
+
+    /** Input characters per chunk. */
+    private final int _chunk;
+}
@@ -0,0 +1,49 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ParallelConverter class.
+ *  @author
+ */
+public class ParallelConverterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a message of N random upper-case letters and spaces. */
+    private static String message(int n) {
+        Random random = new Random(n);
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            msg.append(random.nextInt(6) == 0 ? ' '
+                       : UPPER_STRING.charAt(random.nextInt(26)));
+        }
+        return msg.toString();
+    }
+
+    @Test
+    public void matchesSequential() {
+        ParallelConverter converter =
+            new ParallelConverter(new ForkJoinPool(4), 97);
+        for (int n : new int[] {0, 1, 96, 97, 98, 5000, 100_000}) {
+            String msg = message(n);
+            Machine sequential = MachineTest.exampleMachine(),
+                parallel = MachineTest.exampleMachine();
+            assertEquals(msg("parallel", "length %d", n),
+                         sequential.convert(msg),
+                         converter.convert(parallel, msg));
+            assertEquals(msg("parallel", "state after %d", n),
+                         sequential.convert(msg), parallel.convert(msg));
+        }
+    }
+
+}
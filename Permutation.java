@@ -1,104 +1,113 @@
 package enigma;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  Its tables take one, two or four
+ *  bytes an entry, as the size of the alphabet requires (see IndexTable).
  *  @author Manav
  */
 class Permutation {
 
-
-    /** Keep track of cycles, each node contains the character,
-     * a pointer to another node that contains its permuted character,
-     * and a pointer to the node of its inverted character.
-     */
-    static class Node {
-
-        /** Loop through alphabet to set up Nodes first,
-         * then do connections.
-         * @param c Char from alphabet that is being saved
-         */
-        Node(char c) {
-            _char = c;
-            _permute = null;
-            _invert = null;
-        }
-
-        /** Stores char. */
-        private char _char;
-
-        /** Store next. */
-        private Node _permute;
-
-        /** Store previous. */
-        private Node _invert;
-    }
-
     /** Set this Permutation to that specified by CYCLES, a string in the
      *  form "(cccc) (cc) ..." where the c's are characters in ALPHABET, which
      *  is interpreted as a permutation in cycle notation.  Characters in the
      *  alphabet that are not included in any cycle map to themselves.
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
-        _alphabet = alphabet;
-        _derangement = true;
-        createPermutationSkeleton();
-        cycles = cycles.replaceAll("\\s", "");
-        String[] cyclesArr = cycles.split("[)(]");
-        for (String cycle : cyclesArr) {
-            if (!cycle.equals("")) {
-                addCycle(cycle);
-            }
-        }
-        mapIdentites();
+        this(cycles, 0, cycles.length(), alphabet);
     }
 
-    /** Fill in any transforms not stated explicitly. */
-    private void mapIdentites() {
-        for (Node i : _permutation) {
-            if (i._permute == null) {
-                i._permute = i;
-                i._invert = i;
-                if (_derangement) {
-                    _derangement = false;
+    /** Set this Permutation to that specified by the characters START
+     *  .. END-1 of CYCLES, as for Permutation(String, Alphabet), reading
+     *  them in a single pass.  Each parenthesis ends any cycle before it,
+     *  and whitespace does not. */
+    Permutation(CharSequence cycles, int start, int end, Alphabet alphabet) {
+        _alphabet = alphabet;
+        int[] forward = new int[alphabet.size()];
+        int[] inverse = new int[alphabet.size()];
+        Arrays.fill(forward, -1);
+        int first = -1, from = -1;
+        for (int k = start; k < end;) {
+            int ch = Character.codePointAt(cycles, k);
+            k += Character.charCount(ch);
+            if (ch == '(' || ch == ')') {
+                if (first >= 0) {
+                    link(forward, inverse, from, first);
+                }
+                first = -1;
+            } else if (!Character.isWhitespace(ch)) {
+                int to = index(ch);
+                if (first < 0) {
+                    first = to;
+                } else {
+                    link(forward, inverse, from, to);
                 }
+                from = to;
+            }
+        }
+        if (first >= 0) {
+            link(forward, inverse, from, first);
+        }
+        _derangement = true;
+        for (int i = 0; i < forward.length; i++) {
+            if (forward[i] == -1) {
+                forward[i] = i;
+                inverse[i] = i;
+            }
+            if (forward[i] == i) {
+                _derangement = false;
             }
         }
+        _forward = new IndexTable(forward, forward.length);
+        _inverse = new IndexTable(inverse, inverse.length);
     }
 
-    /** Create skeleton to store permutation. */
-    private void createPermutationSkeleton() {
-        _permutation = new ArrayList<Node>();
+    /** A Permutation of ALPHABET that maps each index i to FORWARD[i], and
+     *  whose inverse maps it to INVERSE[i], as written out by a
+     *  CompiledConfig.  The arrays must be inverses of each other. */
+    Permutation(int[] forward, int[] inverse, Alphabet alphabet) {
+        _alphabet = alphabet;
+        if (forward.length != alphabet.size()
+            || inverse.length != alphabet.size()) {
+            throw error("permutation tables do not fit alphabet");
+        }
+        _derangement = true;
         for (int i = 0; i < size(); i++) {
-            _permutation.add(new Node(_alphabet.toChar(i)));
+            int to = forward[i];
+            if (to < 0 || to >= size() || inverse[to] != i) {
+                throw error("permutation tables are not inverses");
+            }
+            if (to == i) {
+                _derangement = false;
+            }
         }
+        _forward = new IndexTable(forward, size());
+        _inverse = new IndexTable(inverse, size());
     }
 
-    /** Check if requested c is in _alphabet.
-     * @param c get node containing this char.
-     * @return return node containing char c*/
-    private Node getNode(char c) {
-        if (_alphabet.contains(c)) {
-            return _permutation.get(_alphabet.toInt(c));
+    /** Return the index of the character with code point C, which must be
+     *  in my alphabet. */
+    private int index(int c) {
+        int i = _alphabet.toIndex(c);
+        if (i < 0) {
+            throw new EnigmaException("Char Not In Alphabet");
         }
-        throw new EnigmaException("Char Not In Alphabet");
+        return i;
     }
 
-    /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    private void addCycle(String cycle) {
-        if (_derangement && cycle.length() == 1) {
-            _derangement = false;
-        }
-        for (int i = 0; i + 1 < cycle.length(); i++) {
-            getNode(cycle.charAt(i))._permute = getNode(cycle.charAt(i + 1));
-            getNode(cycle.charAt(i + 1))._invert = getNode(cycle.charAt(i));
+    /** Make FROM map to TO in the tables FORWARD and INVERSE, where FROM
+     *  and TO are indices in my alphabet and FROM must not already have an
+     *  image. */
+    private void link(int[] forward, int[] inverse, int from, int to) {
+        if (forward[from] != -1) {
+            throw error("Char %c Repeated In Cycles",
+                        _alphabet.toCodePoint(from));
         }
-        getNode(cycle.charAt(cycle.length() - 1))._permute
-                = getNode(cycle.charAt(0));
-        getNode(cycle.charAt(0))._invert
-                = getNode(cycle.charAt(cycle.length() - 1));
+        forward[from] = to;
+        inverse[to] = from;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -118,24 +127,55 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        return _alphabet.toInt(permute(_alphabet.toChar(wrap(p))));
+        return _forward.get(wrap(p));
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        return _alphabet.toInt(invert(_alphabet.toChar(wrap(c))));
+        return _inverse.get(wrap(c));
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        return getNode(p)._permute._char;
+        return _alphabet.toChar(_forward.get(index(p)));
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        return getNode(c)._invert._char;
+        return _alphabet.toChar(_inverse.get(index(c)));
+    }
+
+    /** Return the rotated wiring of this permutation, or of its inverse
+     *  iff INVERSE (see RotatedTables), building it on first use, or null
+     *  if it exceeds the budget for such tables.  The table must not be
+     *  modified. */
+    int[] rotated(boolean inverse) {
+        int[] table = inverse ? _rotatedInverse : _rotatedForward;
+        if (table == null) {
+            table = buildRotated(inverse);
+        }
+        return table == NO_TABLE ? null : table;
+    }
+
+    /** Build and record my rotated wiring, or its inverse iff INVERSE, or
+     *  record and return NO_TABLE if it exceeds the budget, unless
+     *  another thread has already done so. */
+    private synchronized int[] buildRotated(boolean inverse) {
+        int[] table = inverse ? _rotatedInverse : _rotatedForward;
+        if (table == null) {
+            table = RotatedTables.build(this, inverse);
+            if (table == null) {
+                table = NO_TABLE;
+            }
+            if (inverse) {
+                _rotatedInverse = table;
+            } else {
+                _rotatedForward = table;
+            }
+        }
+        return table;
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -152,9 +192,19 @@ class Permutation {
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** Store This Permutation. */
-    private ArrayList<Node> _permutation;
+    /** Image of each index under this permutation. */
+    private final IndexTable _forward;
+
+    /** Image of each index under the inverse of this permutation. */
+    private final IndexTable _inverse;
 
     /** Derangement, if nothing maps to itself. */
     private boolean _derangement;
+
+    /** Rotated wirings of this permutation and its inverse, null until
+     *  first needed, and NO_TABLE if over budget. */
+    private volatile int[] _rotatedForward, _rotatedInverse;
+
+    /** Marks a rotated wiring that was refused. */
+    private static final int[] NO_TABLE = new int[0];
 }
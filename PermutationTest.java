@@ -75,5 +75,61 @@ public class PermutationTest {
         assertEquals(false, perm.derangement());
     }
 
+    @Test
+    public void checkWrapsIndices() {
+        perm = new Permutation("(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ)",
+                UPPER);
+        assertEquals(perm.permute(0), perm.permute(26));
+        assertEquals(perm.permute(25), perm.permute(-1));
+        assertEquals(perm.invert(3), perm.invert(-23));
+    }
+
+    @Test
+    public void checkSupplementary() {
+        Alphabet letters = new Alphabet("A\ud83d\ude00BC");
+        perm = new Permutation("(A\ud83d\ude00 C)", letters);
+        assertEquals(1, perm.permute(0));
+        assertEquals(3, perm.permute(1));
+        assertEquals(2, perm.permute(2));
+        assertEquals(0, perm.invert(1));
+        assertEquals(false, perm.derangement());
+    }
+
+    @Test
+    public void checkLargeAlphabet() {
+        StringBuilder chars = new StringBuilder(), cycle = new StringBuilder();
+        for (int i = 0; i < 70000; i += 1) {
+            chars.appendCodePoint(0x10000 + i);
+        }
+        cycle.append('(').appendCodePoint(0x10000)
+            .appendCodePoint(0x10000 + 69999).append(')');
+        Alphabet letters = new Alphabet(chars.toString());
+        perm = new Permutation(cycle.toString(), letters);
+        assertEquals(69999, perm.permute(0));
+        assertEquals(0, perm.invert(69999));
+        assertEquals(12345, perm.permute(12345));
+    }
+
+    @Test
+    public void checkRotated() {
+        perm = new Permutation(NAVALA.get("VI"), UPPER);
+        int[] forward = perm.rotated(false), inverse = perm.rotated(true);
+        assertSame(forward, perm.rotated(false));
+        for (int s = 0; s < 26; s += 1) {
+            for (int c = 0; c < 26; c += 1) {
+                assertEquals(msg("rotated", "setting %d, %d", s, c),
+                             perm.wrap(perm.permute(c + s) - s),
+                             forward[s * 26 + c]);
+                assertEquals(msg("rotated", "setting %d, %d", s, c),
+                             perm.wrap(perm.invert(c + s) - s),
+                             inverse[s * 26 + c]);
+            }
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRepeatedChar() {
+        perm = new Permutation("(ABC) (CD)", UPPER);
+    }
 
 }
@@ -0,0 +1,277 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** A memo of the whole substitution of a machine at each combination of
+ *  settings of its moving rotors: the table giving, for every index c,
+ *  the result of passing c through the plugboard, the rotors, the
+ *  reflector and back.  A machine with few pawls and short notch periods
+ *  revisits the same settings again and again, especially when it
+ *  converts many messages from the same start; with the memo, each such
+ *  keypress costs one lookup here and one table load.
+ *
+ *  The settings of the moving rotors are packed into a long key, which an
+ *  open-addressed table (linear probing, with deletion by backward
+ *  shifting) maps to an entry holding the substitution, a byte or a
+ *  short per index.  Entries are evicted by the CLOCK algorithm once a
+ *  budget of bytes is used up.  The memo belongs to one machine: it is
+ *  emptied whenever the wiring or the settings of the rotors below the
+ *  pawls change, which it checks only when the machine's state has been
+ *  set (and so has lost its reflection table; see MachineState).
+ *
+ *  Main turns the memo on with the system property enigma.memo, the
+ *  budget in bytes (0, the default, for none).
+ *  @author Manavjot Singh
+ */
+final class PositionCache {
+
+    /** A memo for a machine with NUMROTORS slots, the last NUMPAWLS under
+     *  pawls, over an alphabet of SIZE characters, taking at most BUDGET
+     *  bytes.  Returns null if the budget does not hold a single entry,
+     *  if the alphabet is too large, or if the settings of the moving
+     *  rotors do not fit in a key. */
+    static PositionCache create(long budget, int numRotors, int numPawls,
+                                int size) {
+        int bits = Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+        if (size > IndexTable.SHORT_LIMIT || numPawls == 0
+            || (long) bits * numPawls > Long.SIZE) {
+            return null;
+        }
+        int width = size <= IndexTable.BYTE_LIMIT ? 1 : 2;
+        long entries = budget / ((long) size * width + ENTRY_OVERHEAD);
+        if (entries < 1) {
+            return null;
+        }
+        entries = Math.min(entries, Math.min(MAX_ENTRIES,
+                                             Integer.MAX_VALUE / size));
+        return new PositionCache((int) entries, numRotors, numPawls, size,
+                                 bits, width);
+    }
+
+    /** A memo of CAPACITY entries for a machine of NUMROTORS slots,
+     *  NUMPAWLS pawls and SIZE characters, whose settings take BITS bits
+     *  each, and whose table entries take WIDTH bytes. */
+    private PositionCache(int capacity, int numRotors, int numPawls,
+                          int size, int bits, int width) {
+        _size = size;
+        _numRotors = numRotors;
+        _boundary = numRotors - numPawls;
+        _bits = bits;
+        _keys = new long[capacity];
+        _referenced = new boolean[capacity];
+        if (width == 1) {
+            _bytes = new byte[capacity * size];
+        } else {
+            _shorts = new short[capacity * size];
+        }
+        _index = new int[Integer.highestOneBit(2 * capacity - 1) * 2];
+        _mask = _index.length - 1;
+        _fixed = new int[_boundary];
+        Arrays.fill(_index, -1);
+    }
+
+    /** Return the result of converting C (an index) with SPEC in STATE,
+     *  after first advancing STATE by one keypress. */
+    int convert(MachineSpec spec, MachineState state, int c) {
+        if (spec != _spec || state.reflection() != _reflection) {
+            check(spec, state);
+        }
+        spec.step(state);
+        long key = 0;
+        for (int i = _boundary; i < _numRotors; i++) {
+            key = key << _bits | state.setting(i);
+        }
+        int entry = find(key);
+        if (entry < 0) {
+            _misses += 1;
+            if (Metrics.ENABLED) {
+                Metrics.memo(false);
+            }
+            entry = add(key, spec, state);
+        } else {
+            _hits += 1;
+            if (Metrics.ENABLED) {
+                Metrics.memo(true);
+            }
+            _referenced[entry] = true;
+        }
+        int k = entry * _size + c;
+        return _bytes != null ? _bytes[k] & BYTE_MASK
+            : _shorts[k] & SHORT_MASK;
+    }
+
+    /** Note that the machine now has wiring SPEC and is in STATE, which
+     *  has just been set, and empty me if the rotors below the pawls are
+     *  not as they were. */
+    private void check(MachineSpec spec, MachineState state) {
+        _reflection = spec.reflection(state);
+        boolean same = spec == _spec;
+        for (int i = 0; i < _boundary; i++) {
+            same &= _fixed[i] == state.setting(i);
+            _fixed[i] = state.setting(i);
+        }
+        if (!same) {
+            clear();
+        }
+        _spec = spec;
+    }
+
+    /** Return the entry holding KEY, or -1 if there is none. */
+    private int find(long key) {
+        for (int h = hash(key); _index[h] >= 0; h = (h + 1) & _mask) {
+            if (_keys[_index[h]] == key) {
+                return _index[h];
+            }
+        }
+        return -1;
+    }
+
+    /** Fill an entry with the substitution of SPEC in STATE, whose moving
+     *  rotors' settings are KEY, evicting another if need be, and return
+     *  it. */
+    private int add(long key, MachineSpec spec, MachineState state) {
+        int entry;
+        if (_count < _keys.length) {
+            entry = _count;
+            _count += 1;
+        } else {
+            while (_referenced[_hand]) {
+                _referenced[_hand] = false;
+                _hand = _hand + 1 == _keys.length ? 0 : _hand + 1;
+            }
+            entry = _hand;
+            _hand = _hand + 1 == _keys.length ? 0 : _hand + 1;
+            remove(_keys[entry]);
+            _evictions += 1;
+        }
+        _keys[entry] = key;
+        _referenced[entry] = false;
+        int h = hash(key);
+        while (_index[h] >= 0) {
+            h = (h + 1) & _mask;
+        }
+        _index[h] = entry;
+        for (int c = 0, k = entry * _size; c < _size; c++, k++) {
+            int image = spec.map(state, c);
+            if (_bytes != null) {
+                _bytes[k] = (byte) image;
+            } else {
+                _shorts[k] = (short) image;
+            }
+        }
+        return entry;
+    }
+
+    /** Remove KEY, which must be present, from _index, shifting back any
+     *  keys after it in its run that would otherwise become
+     *  unreachable. */
+    private void remove(long key) {
+        int h = hash(key);
+        while (_keys[_index[h]] != key) {
+            h = (h + 1) & _mask;
+        }
+        int hole = h;
+        for (h = (h + 1) & _mask; _index[h] >= 0; h = (h + 1) & _mask) {
+            int home = hash(_keys[_index[h]]);
+            if (((h - home) & _mask) >= ((h - hole) & _mask)) {
+                _index[hole] = _index[h];
+                hole = h;
+            }
+        }
+        _index[hole] = -1;
+    }
+
+    /** Return the home slot in _index of KEY. */
+    private int hash(long key) {
+        key *= HASH_MULTIPLIER;
+        return (int) (key >>> (Long.SIZE - Integer.SIZE)) & _mask;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_index, -1);
+        _count = 0;
+        _hand = 0;
+    }
+
+    /** Return the number of keypresses whose substitution was found. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of keypresses whose substitution was not. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the number of entries evicted to make room for others. */
+    long evictions() {
+        return _evictions;
+    }
+
+    /** Return the most entries I can hold. */
+    int capacity() {
+        return _keys.length;
+    }
+
+    /** Bytes of an entry beyond its table: its key, its reference bit
+     *  and (on average) three slots of _index, which has from two to four
+     *  per entry. */
+    private static final int ENTRY_OVERHEAD =
+        Long.BYTES + 1 + 3 * Integer.BYTES;
+
+    /** Most entries, so that _index stays within the limits of an
+     *  array. */
+    private static final int MAX_ENTRIES = 1 << 26;
+
+    /** Multiplier scrambling keys (the 64-bit golden ratio). */
+    private static final long HASH_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    /** Masks of the bits of a byte and a short. */
+    private static final int BYTE_MASK = 0xff, SHORT_MASK = 0xffff;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Slot of the leftmost rotor under a pawl. */
+    private final int _boundary;
+
+    /** Bits of a key per moving rotor. */
+    private final int _bits;
+
+    /** Key of each entry. */
+    private final long[] _keys;
+
+    /** CLOCK reference bit of each entry. */
+    private final boolean[] _referenced;
+
+    /** Substitutions of the entries, _size to an entry, in exactly one
+     *  of these. */
+    private byte[] _bytes;
+    private short[] _shorts;
+
+    /** Open-addressed slots holding entry numbers, or -1 if empty. */
+    private final int[] _index;
+
+    /** Number of slots of _index, less one. */
+    private final int _mask;
+
+    /** Settings of the rotors below the pawls for which my entries
+     *  hold. */
+    private final int[] _fixed;
+
+    /** Wiring for which my entries hold. */
+    private MachineSpec _spec;
+
+    /** Reflection table of the state last checked (see check). */
+    private int[] _reflection;
+
+    /** Number of entries in use, and the CLOCK hand. */
+    private int _count, _hand;
+
+    /** Counts of hits, misses and evictions. */
+    private long _hits, _misses, _evictions;
+}
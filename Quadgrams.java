@@ -0,0 +1,143 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+
+import static enigma.EnigmaException.*;
+
+/** A fitness measure for candidate plaintexts: the log probability of
+ *  their quadgrams (runs of four characters) under the frequencies of a
+ *  sample of the plaintext language.  The frequencies are read from
+ *  lines of the form "QUAD COUNT", as in the published tables for
+ *  English.  Quadgrams that do not occur in the sample are given a small
+ *  probability rather than none.
+ *  @author Manavjot Singh
+ */
+final class Quadgrams implements Scorer {
+
+    /** The quadgram scores of ALPHABET read from COUNTS. */
+    Quadgrams(Alphabet alphabet, Reader counts) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        long cells = (long) _size * _size * _size * _size;
+        if (cells > MAX_CELLS) {
+            throw error("alphabet too large for quadgram scores");
+        }
+        _cube = _size * _size * _size;
+        long[] count = new long[(int) cells];
+        long total = 0;
+        BufferedReader in = new BufferedReader(counts);
+        try {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields[0].isEmpty()) {
+                    continue;
+                }
+                if (fields.length != 2 || fields[0].length() != 4) {
+                    throw error("bad quadgram line: %s", line);
+                }
+                long n;
+                try {
+                    n = Long.parseLong(fields[1]);
+                } catch (NumberFormatException excp) {
+                    throw error("bad quadgram count: %s", fields[1]);
+                }
+                if (n < 0) {
+                    throw error("bad quadgram count: %s", fields[1]);
+                }
+                count[index(fields[0])] += n;
+                total += n;
+            }
+        } catch (IOException excp) {
+            throw error("could not read quadgram counts");
+        }
+        if (total == 0) {
+            throw error("no quadgram counts");
+        }
+        _table = new float[count.length];
+        float floor = (float) Math.log10(FLOOR / total);
+        for (int i = 0; i < count.length; i++) {
+            _table[i] = count[i] == 0 ? floor
+                : (float) Math.log10((double) count[i] / total);
+        }
+    }
+
+    /** Return the quadgram scores of ALPHABET read from the file named
+     *  NAME. */
+    static Quadgrams read(String name, Alphabet alphabet) {
+        try (Reader in = Files.newBufferedReader(Paths.get(name),
+                                                 Charset.defaultCharset())) {
+            return new Quadgrams(alphabet, in);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the index in _table of the quadgram QUAD. */
+    private int index(String quad) {
+        int result = 0;
+        for (int i = 0; i < 4; i++) {
+            int c = _alphabet.toInt(quad.charAt(i));
+            if (c < 0) {
+                throw error("Character %c not in alphabet", quad.charAt(i));
+            }
+            result = result * _size + c;
+        }
+        return result;
+    }
+
+    /** Return the score of the first LEN characters of TEXT (as indices
+     *  in my alphabet): the sum of the log probabilities of its
+     *  quadgrams.  Higher scores are more like the sample.  Quadgrams
+     *  hold no working storage, so may be shared among threads. */
+    @Override
+    public double score(int[] text, int len) {
+        if (len < 4) {
+            return 0.0;
+        }
+        int quad = (text[0] * _size + text[1]) * _size + text[2];
+        double result = 0.0;
+        for (int i = 3; i < len; i++) {
+            quad = (quad % _cube) * _size + text[i];
+            result += _table[quad];
+        }
+        return result;
+    }
+
+    /** Add to DIGEST my alphabet and the score of every quadgram. */
+    @Override
+    public void identify(MessageDigest digest) {
+        ByteBuffer bytes =
+            ByteBuffer.allocate(Integer.BYTES * (_size + _table.length));
+        for (int i = 0; i < _size; i++) {
+            bytes.putInt(_alphabet.toCodePoint(i));
+        }
+        bytes.asFloatBuffer().put(_table);
+        digest.update("quadgrams ".getBytes(StandardCharsets.UTF_8));
+        digest.update(bytes.array());
+    }
+
+    /** Largest number of entries in a table. */
+    private static final long MAX_CELLS = 1 << 24;
+
+    /** Count given to quadgrams that are missing from the sample. */
+    private static final double FLOOR = 0.01;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet, and its cube. */
+    private final int _size, _cube;
+
+    /** Log probability of each quadgram, indexed by its characters as
+     *  digits in base _size. */
+    private final float[] _table;
+}
@@ -0,0 +1,73 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Rotated wirings of permutations: for a permutation P of an alphabet of
+ *  N characters, the table T with T[s * N + c] = (P(c + s) - s) mod N,
+ *  which is the mapping of a rotor wired as P at setting s.  With it, a
+ *  signal passes through a rotor with one array load and no modular
+ *  arithmetic.  Each table holds N * N entries, so tables are built
+ *  lazily (see Permutation.rotated), only once per permutation, and only
+ *  while the total built stays within a budget of bytes given by the
+ *  system property enigma.rotated.limit (DEFAULT_LIMIT by default; 0
+ *  for none).  Permutations denied a table are simply converted with
+ *  arithmetic, as before.  The bytes built so far are reported by
+ *  bytes(), and through Metrics.
+ *  @author Manavjot Singh
+ */
+final class RotatedTables {
+
+    /** Not instantiable. */
+    private RotatedTables() {
+    }
+
+    /** Return the rotated wiring of PERM, or of its inverse iff INVERSE,
+     *  or null if it would exceed the budget. */
+    static int[] build(Permutation perm, boolean inverse) {
+        int n = perm.size();
+        long bytes = (long) n * n * Integer.BYTES;
+        if ((long) n * n > Integer.MAX_VALUE || !reserve(bytes)) {
+            return null;
+        }
+        int[] result = new int[n * n];
+        for (int s = 0, k = 0; s < n; s++) {
+            for (int c = 0; c < n; c++, k++) {
+                int p = c + s;
+                int r = (inverse ? perm.invert(p >= n ? p - n : p)
+                         : perm.permute(p >= n ? p - n : p)) - s;
+                result[k] = r < 0 ? r + n : r;
+            }
+        }
+        return result;
+    }
+
+    /** Reserve BYTES of the budget for a table, returning false if it
+     *  would be exceeded. */
+    private static boolean reserve(long bytes) {
+        while (true) {
+            long used = BYTES.get();
+            if (used + bytes > LIMIT) {
+                return false;
+            }
+            if (BYTES.compareAndSet(used, used + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /** Return the number of bytes of tables built so far. */
+    static long bytes() {
+        return BYTES.get();
+    }
+
+    /** Default budget: 64 MiB, enough for both tables of some 800
+     *  rotors of 100 characters, or of 32 rotors of 500. */
+    static final long DEFAULT_LIMIT = 64L << 20;
+
+    /** The budget, in bytes. */
+    static final long LIMIT =
+        Long.getLong("enigma.rotated.limit", DEFAULT_LIMIT);
+
+    /** Bytes of tables built so far. */
+    private static final AtomicLong BYTES = new AtomicLong();
+}
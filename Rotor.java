@@ -11,7 +11,6 @@ class Rotor {
     Rotor(String name, Permutation perm) {
         _name = name;
         _permutation = perm;
-        _right = null;
         _ring = 0;
     }
 
@@ -84,8 +83,14 @@ class Rotor {
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
-     *  according to my permutation. */
+     *  according to my permutation, through its rotated wiring (see
+     *  Permutation.rotated) if it has one and my setting is in range. */
     int convertForward(int p) {
+        int[] rotated = _permutation.rotated(false);
+        int set = setting();
+        if (rotated != null && set >= 0 && set < size()) {
+            return rotated[set * size() + p];
+        }
         return _permutation.wrap(_permutation.permute(
                 p + setting()) - setting());
     }
@@ -93,6 +98,11 @@ class Rotor {
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
+        int[] rotated = _permutation.rotated(true);
+        int set = setting();
+        if (rotated != null && set >= 0 && set < size()) {
+            return rotated[set * size() + e];
+        }
         return _permutation.wrap(_permutation.invert(
                 e + setting()) - setting());
     }
@@ -103,14 +113,14 @@ class Rotor {
         return false;
     }
 
-    /** Advance me one position, if possible. By default, does nothing. */
-    void advance() {
+    /** Return a table whose entry P is true iff I am at a notch when at
+     *  position P (my setting plus my ring).  By default, I have none. */
+    boolean[] notches() {
+        return new boolean[size()];
     }
 
-    /** Set _right to right rotor.
-     * @param rr set right to rr rotor*/
-    void right(Rotor rr) {
-        _right = rr;
+    /** Advance me one position, if possible. By default, does nothing. */
+    void advance() {
     }
 
     /** public wrap.
@@ -120,10 +130,6 @@ class Rotor {
         return _permutation.wrap(p);
     }
 
-    /** Advance when moved by Notch. */
-    void notchAdvance() {
-    }
-
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -138,9 +144,6 @@ class Rotor {
     /** The permutation implemented by this rotor in its 0 position. */
     private Permutation _permutation;
 
-    /** Pointer To Right Rotor For Advance. */
-    protected Rotor _right;
-
     /** Keep Track of Rotor Setting. */
     private int _setting;
 
@@ -0,0 +1,20 @@
+package enigma;
+
+import java.security.MessageDigest;
+
+/** A measure of how much a candidate decryption looks like plaintext,
+ *  used to rank keys in searches.  A scorer may keep working storage,
+ *  and so need not be safe to use from several threads at once.
+ *  @author Manavjot Singh
+ */
+interface Scorer {
+
+    /** Return the score of the first LEN characters of TEXT (as indices
+     *  in an alphabet).  Higher scores are more like plaintext. */
+    double score(int[] text, int len);
+
+    /** Add to DIGEST all that determines my scores, so that searches
+     *  scored differently can be told apart. */
+    void identify(MessageDigest digest);
+
+}
@@ -0,0 +1,425 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** An exhaustive search of a KeySpace for the keys under which a
+ *  ciphertext decrypts best, by some Scorer.  The keys are divided into
+ *  units of consecutive keys, which are split among the threads of a
+ *  fork/join pool (so that idle threads steal units from busy ones).
+ *  As each unit finishes, its best keys are merged into the result, and
+ *  every so often the numbers of the finished units and the best keys
+ *  so far are written to a checkpoint file.  A search started with an
+ *  existing checkpoint file skips the units it records.
+ *  @author Manavjot Singh
+ */
+class Sweep {
+
+    /** Try every key of the machine configured by ARGS[0] on the
+     *  ciphertext in the file named ARGS[1], scoring by the quadgram
+     *  counts in the file named ARGS[2] if given, and by index of
+     *  coincidence otherwise, and print the best keys with their
+     *  scores.  The system properties enigma.sweep.checkpoint (a file
+     *  name), enigma.sweep.interval (seconds between checkpoints) and
+     *  enigma.sweep.keep (number of keys printed) control the search. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 3) {
+                throw error("Usage: java enigma.Sweep CONFIG CIPHERTEXT "
+                            + "[QUADGRAMS]");
+            }
+            String ciphertext;
+            try {
+                ciphertext = new String(Files.readAllBytes(Paths.get(args[1])),
+                                        Charset.defaultCharset());
+            } catch (IOException excp) {
+                throw error("could not open %s", args[1]);
+            }
+            KeySpace space = new KeySpace(Main.loadMachine(args[0]));
+            Supplier<Scorer> scorers;
+            if (args.length == 3) {
+                Quadgrams quadgrams = Quadgrams.read(args[2],
+                                                     space.alphabet());
+                scorers = () -> quadgrams;
+            } else {
+                int size = space.alphabet().size();
+                scorers = () -> new Coincidence(size);
+            }
+            Sweep sweep = new Sweep(space, ciphertext, scorers);
+            sweep.setKeep(Integer.getInteger("enigma.sweep.keep",
+                                             DEFAULT_KEEP));
+            String checkpoint = System.getProperty("enigma.sweep.checkpoint");
+            if (checkpoint != null) {
+                sweep.setCheckpoint(Paths.get(checkpoint),
+                                    1000L * Integer.getInteger(
+                                        "enigma.sweep.interval",
+                                        DEFAULT_INTERVAL));
+            }
+            long start = System.nanoTime();
+            for (Result result : sweep.run(ForkJoinPool.commonPool())) {
+                System.out.println(result);
+            }
+            double secs = (System.nanoTime() - start) * 1e-9;
+            System.err.printf("%d keys in %.1f s (%.0f keys/s)%n",
+                              sweep.keys(), secs, sweep.keys() / secs);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A search of SPACE for the keys that best decrypt CIPHERTEXT
+     *  (whitespace ignored), scored by scorers from SCORERS, each of
+     *  which is used by one thread at a time. */
+    Sweep(KeySpace space, String ciphertext, Supplier<Scorer> scorers) {
+        _space = space;
+        _scorers = scorers;
+        _cipher = Machine.indices(space.alphabet(), ciphertext);
+        _units = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                                            (space.size() + UNIT - 1) / UNIT));
+        _unit = Math.max(UNIT, (space.size() + _units - 1) / _units);
+        _identity = identity();
+    }
+
+    /** Keep the best KEEP keys. */
+    void setKeep(int keep) {
+        if (keep <= 0) {
+            throw error("number of keys kept must be positive");
+        }
+        _keep = keep;
+    }
+
+    /** Resume from and save progress to the checkpoint file FILE,
+     *  writing it at most every INTERVAL milliseconds, and at the end. */
+    void setCheckpoint(Path file, long interval) {
+        _checkpoint = file;
+        _interval = interval;
+    }
+
+    /** Return the number of keys tried by this search (not counting
+     *  those of units finished before it resumed). */
+    long keys() {
+        return _tried.sum();
+    }
+
+    /** Return the best keys, best first, after trying every key of my
+     *  space on POOL that a checkpoint does not record as tried. */
+    List<Result> run(ForkJoinPool pool) {
+        _done.clear();
+        _best.clear();
+        if (_checkpoint != null && Files.exists(_checkpoint)) {
+            readCheckpoint();
+        }
+        _resumed = (BitSet) _done.clone();
+        _written = System.currentTimeMillis();
+        pool.invoke(new Units(0, _units));
+        if (_checkpoint != null) {
+            writeCheckpoint();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(_best));
+    }
+
+    /** A key with its score. */
+    static final class Result {
+
+        /** Key number KEY of SPACE, with score SCORE. */
+        Result(KeySpace space, long key, double score) {
+            _space = space;
+            _key = key;
+            _score = score;
+        }
+
+        /** Return my key number. */
+        long key() {
+            return _key;
+        }
+
+        /** Return my score. */
+        double score() {
+            return _score;
+        }
+
+        /** Return my score followed by a setting line for my key. */
+        @Override
+        public String toString() {
+            return String.format("%.6f %s", _score,
+                                 _space.settingLine(_key));
+        }
+
+        /** Space of my key. */
+        private final KeySpace _space;
+        /** Key number. */
+        private final long _key;
+        /** Score of the decryption under _key. */
+        private final double _score;
+    }
+
+    /** Best-first ordering of results, ties going to lower keys. */
+    private static final Comparator<Result> BEST_FIRST =
+        Comparator.comparingDouble((Result r) -> -r._score)
+        .thenComparingLong(r -> r._key);
+
+    /** Merge RESULTS, the best keys of unit number UNIT (if UNIT >= 0),
+     *  into _best, and record the unit as done, writing a checkpoint if
+     *  one is due. */
+    private synchronized void finish(int unit, List<Result> results) {
+        _best.addAll(results);
+        _best.sort(BEST_FIRST);
+        while (_best.size() > _keep) {
+            _best.remove(_best.size() - 1);
+        }
+        if (unit < 0) {
+            return;
+        }
+        _done.set(unit);
+        if (_checkpoint != null
+            && System.currentTimeMillis() - _written >= _interval) {
+            writeCheckpoint();
+        }
+    }
+
+    /** Write the finished units and the best keys so far to the
+     *  checkpoint file, replacing it only once the new one is complete,
+     *  so that a run killed while writing leaves the old one intact. */
+    private synchronized void writeCheckpoint() {
+        Path temp = _checkpoint.resolveSibling(_checkpoint.getFileName()
+                                               + ".tmp");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(
+                 temp, Charset.defaultCharset()))) {
+            out.println(header());
+            for (int lo = _done.nextSetBit(0); lo >= 0;
+                 lo = _done.nextSetBit(lo)) {
+                int hi = _done.nextClearBit(lo);
+                out.printf("done %d %d%n", lo, hi);
+                lo = hi;
+            }
+            for (Result result : _best) {
+                out.printf("best %d %s%n", result._key,
+                           Double.toString(result._score));
+            }
+            if (out.checkError()) {
+                throw error("could not write %s", temp);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", temp);
+        }
+        try {
+            Files.move(temp, _checkpoint,
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not replace %s", _checkpoint);
+        }
+        _written = System.currentTimeMillis();
+    }
+
+    /** Read the finished units and best keys from the checkpoint file,
+     *  which must have been written by a search of the same keys, scorer
+     *  and ciphertext. */
+    private void readCheckpoint() {
+        try (BufferedReader in = Files.newBufferedReader(
+                 _checkpoint, Charset.defaultCharset())) {
+            if (!header().equals(in.readLine())) {
+                throw error("checkpoint %s is for a different search",
+                            _checkpoint);
+            }
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                String[] fields = line.split(" ");
+                if (fields.length != 3) {
+                    throw error("bad checkpoint line: %s", line);
+                }
+                if (fields[0].equals("done")) {
+                    int lo = Integer.parseInt(fields[1]),
+                        hi = Integer.parseInt(fields[2]);
+                    if (lo < 0 || hi > _units || lo > hi) {
+                        throw error("bad checkpoint line: %s", line);
+                    }
+                    _done.set(lo, hi);
+                } else if (fields[0].equals("best")) {
+                    long key = Long.parseLong(fields[1]);
+                    if (key < 0 || key >= _space.size()) {
+                        throw error("bad checkpoint line: %s", line);
+                    }
+                    _best.add(new Result(_space, key,
+                                         Double.parseDouble(fields[2])));
+                } else {
+                    throw error("bad checkpoint line: %s", line);
+                }
+            }
+        } catch (NumberFormatException excp) {
+            throw error("bad number in checkpoint %s", _checkpoint);
+        } catch (IOException excp) {
+            throw error("could not read %s", _checkpoint);
+        }
+        finish(-1, Collections.emptyList());
+    }
+
+    /** Return the first line of my checkpoint files, which identifies
+     *  the search. */
+    private String header() {
+        return String.format("enigma sweep %d keys %d units %d text %s",
+                             _space.size(), _units, _cipher.length,
+                             _identity);
+    }
+
+    /** Return, in hexadecimal, the SHA-256 digest of all that determines
+     *  the outcome of my search: the rotors and parameters of my key
+     *  space, my scorer, and my ciphertext.  Checkpoints of searches
+     *  that differ in any of them are thus rejected, even when they have
+     *  the same numbers of keys and units. */
+    private String identity() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("SHA-256 is not available");
+        }
+        _space.identify(digest);
+        _scorers.get().identify(digest);
+        ByteBuffer text = ByteBuffer.allocate(Integer.BYTES * _cipher.length);
+        text.asIntBuffer().put(_cipher);
+        digest.update(text.array());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /** The search of a range of units, split among threads. */
+    private class Units extends RecursiveAction {
+
+        /** A search of units LO .. HI-1. */
+        Units(int lo, int hi) {
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Units(_lo, mid), new Units(mid, _hi));
+            } else if (!_resumed.get(_lo)) {
+                new Trial().run(_lo);
+            }
+        }
+
+        /** Range of units. */
+        private final int _lo, _hi;
+    }
+
+    /** The working storage of one unit of the search. */
+    private class Trial {
+
+        /** Try the keys of unit number UNIT, and record its best keys. */
+        void run(int unit) {
+            long lo = unit * _unit, hi = Math.min(lo + _unit, _space.size());
+            int order = -1;
+            BestKeys best = new BestKeys(_keep);
+            long tried = 0;
+            for (long key = lo; key < hi; key++) {
+                if (_space.order(key) != order) {
+                    order = _space.order(key);
+                    _spec = _space.spec(order);
+                }
+                if (!_space.setUp(key, _start)) {
+                    continue;
+                }
+                _spec.reflection(_start);
+                _state.copyFrom(_start);
+                for (int i = 0; i < _cipher.length; i++) {
+                    _plain[i] = _spec.convert(_state, _cipher[i]);
+                }
+                tried += 1;
+                best.offer(key, _scorer.score(_plain, _plain.length));
+            }
+            List<Result> results = new ArrayList<>();
+            for (int i = 0; i < best.size(); i++) {
+                results.add(new Result(_space, best.key(i), best.score(i)));
+            }
+            _tried.add(tried);
+            finish(unit, results);
+        }
+
+        /** Wiring of the order of the current key. */
+        private MachineSpec _spec;
+        /** Settings of the current key, and those of its decryption. */
+        private final MachineState _start = _space.state(),
+            _state = _space.state();
+        /** Decryption of the ciphertext under the current key. */
+        private final int[] _plain = new int[_cipher.length];
+        /** Scorer of _plain. */
+        private final Scorer _scorer = _scorers.get();
+    }
+
+    /** Default number of keys kept. */
+    static final int DEFAULT_KEEP = 10;
+
+    /** Default number of seconds between checkpoints. */
+    static final int DEFAULT_INTERVAL = 60;
+
+    /** Smallest number of keys in a unit. */
+    private static final long UNIT = 1 << 16;
+
+    /** The keys searched. */
+    private final KeySpace _space;
+
+    /** Source of scorers. */
+    private final Supplier<Scorer> _scorers;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** Digest identifying the search in checkpoints (see identity). */
+    private final String _identity;
+
+    /** Number of units. */
+    private final int _units;
+
+    /** Number of keys in each unit but the last. */
+    private final long _unit;
+
+    /** Number of keys kept. */
+    private int _keep = DEFAULT_KEEP;
+
+    /** Checkpoint file, or null. */
+    private Path _checkpoint;
+
+    /** Milliseconds between checkpoints. */
+    private long _interval;
+
+    /** Time at which the checkpoint file was last written. */
+    private long _written;
+
+    /** Units finished, including those read from the checkpoint. */
+    private final BitSet _done = new BitSet();
+
+    /** Units read from the checkpoint, which are skipped. */
+    private BitSet _resumed;
+
+    /** Best keys so far, best first. */
+    private final List<Result> _best = new ArrayList<>();
+
+    /** Number of keys tried. */
+    private final LongAdder _tried = new LongAdder();
+}
@@ -0,0 +1,155 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySpace and Sweep classes.
+ *  @author
+ */
+public class SweepTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Plaintext of the test message. */
+    private static final String PLAIN =
+        "THEWEATHERINTHEBAYOFBISCAYWILLBECLEARTHROUGHOUTTHEDAYWITHLIGHT"
+        + "WINDSFROMTHENORTHWESTANDAGOODVISIBILITYATSEA";
+
+    /** Return PLAIN enciphered by the 3-slot machine with rotors B III I
+     *  at positions DQ and rings AC. */
+    private static String cipher() {
+        Machine M = smallMachine(3);
+        M.insertRotors(new String[] {"B", "III", "I"});
+        M.setRing("AC");
+        M.setRotors("DQ");
+        return M.convert(PLAIN);
+    }
+
+    /** Return a sweep of the 3-slot machine for cipher(). */
+    private static Sweep sweep() {
+        Quadgrams quads = quadgrams(PLAIN);
+        return new Sweep(new KeySpace(smallMachine(3)), cipher(), () -> quads);
+    }
+
+    /** Return true iff SWEEP rejects the checkpoint file FILE. */
+    private static boolean rejects(Sweep sweep, Path file) {
+        sweep.setCheckpoint(file, 0);
+        try {
+            sweep.run(ForkJoinPool.commonPool());
+            return false;
+        } catch (EnigmaException excp) {
+            return true;
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void countsKeys() {
+        assertEquals(6L * 26 * 26 * 26 * 26,
+                     new KeySpace(smallMachine(4)).size());
+        assertEquals(6L * 26 * 26 * 26, new KeySpace(smallMachine(3)).size());
+    }
+
+    @Test
+    public void setUpMatchesSettingLine() {
+        KeySpace space = new KeySpace(smallMachine(4));
+        for (long key = 12345; key < space.size(); key += 98765) {
+            String[] line = space.settingLine(key).split(" ");
+            Machine M = smallMachine(4);
+            M.insertRotors(new String[] {line[1], line[2], line[3],
+                                         line[4]});
+            M.setRing(line[6]);
+            M.setRotors(line[5]);
+            MachineSpec spec = space.spec(space.order(key));
+            MachineState state = space.state();
+            assertTrue(space.setUp(key, state));
+            for (int i = 0; i < 100; i++) {
+                assertEquals(msg("setUpMatchesSettingLine", "key %d", key),
+                             M.convert(i % 26),
+                             spec.convert(state, i % 26));
+            }
+        }
+    }
+
+    @Test
+    public void findsKey() {
+        Sweep sweep = sweep();
+        sweep.setKeep(3);
+        List<Sweep.Result> best = sweep.run(ForkJoinPool.commonPool());
+        assertEquals(3, best.size());
+        assertEquals("* B III I DQ AC",
+                     best.get(0).toString().split(" ", 2)[1]);
+        assertEquals(6L * 26 * 26 * 26, sweep.keys());
+    }
+
+    @Test
+    public void resumesFromCheckpoint() throws IOException {
+        Path dir = Files.createTempDirectory("sweep");
+        Path file = dir.resolve("checkpoint");
+        try {
+            Sweep first = sweep();
+            first.setCheckpoint(file, 0);
+            long key = first.run(ForkJoinPool.commonPool()).get(0).key();
+            Sweep second = sweep();
+            second.setCheckpoint(file, 0);
+            List<Sweep.Result> best = second.run(ForkJoinPool.commonPool());
+            assertEquals(0, second.keys());
+            assertEquals(key, best.get(0).key());
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void rejectsOtherCheckpoint() throws IOException {
+        Path file = Files.createTempFile("sweep", ".checkpoint");
+        try {
+            Files.write(file, "enigma sweep 1 keys 1 units 1 text 0\n"
+                        .getBytes());
+            assertTrue(rejects(sweep(), file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void rejectsCheckpointOfSameSize() throws IOException {
+        Path dir = Files.createTempDirectory("sweep");
+        Path file = dir.resolve("checkpoint");
+        try {
+            Sweep first = sweep();
+            first.setKeep(1);
+            first.setCheckpoint(file, 0);
+            first.run(ForkJoinPool.commonPool());
+            KeySpace space = new KeySpace(smallMachine(3));
+            assertTrue(rejects(new Sweep(space, cipher(),
+                                         () -> new Coincidence(26)), file));
+            Quadgrams quads = quadgrams(PLAIN);
+            KeySpace rewired =
+                new KeySpace(smallMachine(3, NAVALA.get("IV")));
+            assertTrue(rejects(new Sweep(rewired, cipher(), () -> quads),
+                               file));
+            assertFalse(rejects(sweep(), file));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+}
@@ -1,6 +1,9 @@
 package enigma;
 
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.TreeMap;
 
 /** Utility definitions for use in unit tests.
  *  @author P. N. Hilfinger
@@ -18,6 +21,45 @@ class TestUtils {
         return testId + " (" + String.format(msgFormat, args) + ")";
     }
 
+    /** Return a machine with NUMROTORS slots and 2 pawls, with reflector
+     *  B, non-moving rotor Beta, and moving rotors I, II and III. */
+    static Machine smallMachine(int numRotors) {
+        return smallMachine(numRotors, NAVALA.get("I"));
+    }
+
+    /** Return smallMachine(NUMROTORS), but with rotor I wired as in the
+     *  cycles WIRING. */
+    static Machine smallMachine(int numRotors, String wiring) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta", new Permutation(NAVALA.get("Beta"),
+                                                          UPPER)));
+        String[][] moving = { {"I", "Q"}, {"II", "E"}, {"III", "V"} };
+        for (String[] rotor : moving) {
+            String cycles =
+                rotor[0].equals("I") ? wiring : NAVALA.get(rotor[0]);
+            rotors.add(new MovingRotor(rotor[0],
+                new Permutation(cycles, UPPER), rotor[1]));
+        }
+        return new Machine(UPPER, numRotors, 2, rotors);
+    }
+
+    /** Return quadgram scores over UPPER taken from the letters of
+     *  TEXT. */
+    static Quadgrams quadgrams(String text) {
+        TreeMap<String, Integer> counts = new TreeMap<>();
+        for (int i = 0; i + 4 <= text.length(); i++) {
+            counts.merge(text.substring(i, i + 4), 1, Integer::sum);
+        }
+        StringBuilder table = new StringBuilder();
+        for (String quad : counts.keySet()) {
+            table.append(quad).append(' ').append(counts.get(quad))
+                .append('\n');
+        }
+        return new Quadgrams(UPPER, new StringReader(table.toString()));
+    }
+
     /** The naval rotors in the A (0) setting. */
     static final HashMap<String, String> NAVALA = new HashMap<>();
     static {
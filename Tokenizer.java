@@ -0,0 +1,163 @@
+package enigma;
+
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/** The whitespace-delimited tokens of some text, read in a single pass
+ *  without regular expressions: a replacement for the Scanner used to
+ *  read configuration files and setting lines.  Its tests of the next
+ *  token (atName, atType, atCycles) stand for the patterns that Main
+ *  once gave Scanner.hasNext, and, like Scanner, it throws
+ *  NoSuchElementException when a token is missing or malformed, so that
+ *  the grammar reports errors as it always has.  Tokens that are only
+ *  skipped are never copied out of the text; instead, position() tells
+ *  where a run of them ends, so that a run of cycles can be handed to
+ *  Permutation as it stands.  Whitespace is as for Character.isWhitespace,
+ *  as for Scanner.
+ *  @author Manavjot Singh
+ */
+final class Tokenizer {
+
+    /** A tokenizer of the whole of TEXT. */
+    Tokenizer(CharSequence text) {
+        reset(text);
+    }
+
+    /** Start over, tokenizing the whole of TEXT. */
+    Tokenizer reset(CharSequence text) {
+        _text = text;
+        _pos = _start = _end = 0;
+        return this;
+    }
+
+    /** Return my text. */
+    CharSequence text() {
+        return _text;
+    }
+
+    /** Return the position in my text just past the last token read or
+     *  skipped. */
+    int position() {
+        return _pos;
+    }
+
+    /** Return the position in my text of the start of the last token
+     *  read or skipped. */
+    int start() {
+        return _start;
+    }
+
+    /** Return true iff there is another token. */
+    boolean hasNext() {
+        if (_start < _pos || _end <= _start) {
+            int n = _text.length();
+            int k = _pos;
+            while (k < n && Character.isWhitespace(_text.charAt(k))) {
+                k += 1;
+            }
+            _start = _end = k;
+            while (_end < n && !Character.isWhitespace(_text.charAt(_end))) {
+                _end += 1;
+            }
+        }
+        return _start < _end;
+    }
+
+    /** Return true iff the next token is "*". */
+    boolean atStar() {
+        return hasNext() && _end - _start == 1 && _text.charAt(_start) == '*';
+    }
+
+    /** Return true iff there is a next token and it contains no
+     *  parentheses, as a rotor name or ring setting does. */
+    boolean atName() {
+        return hasNext() && !contains(_start, "()");
+    }
+
+    /** Return true iff there is a next token and it is a rotor type: R,
+     *  N or M followed by characters other than parentheses and '*'. */
+    boolean atType() {
+        if (!hasNext()) {
+            return false;
+        }
+        char kind = _text.charAt(_start);
+        return (kind == 'R' || kind == 'N' || kind == 'M')
+            && !contains(_start + 1, "()*");
+    }
+
+    /** Return true iff the next token starts with '(' and ends with ')',
+     *  as a token of cycles does. */
+    boolean atCycles() {
+        return hasNext() && _end - _start >= 2
+            && _text.charAt(_start) == '(' && _text.charAt(_end - 1) == ')';
+    }
+
+    /** Return true iff the next token contains any of CHARS at or after
+     *  position FROM. */
+    private boolean contains(int from, String chars) {
+        for (int k = from; k < _end; k++) {
+            if (chars.indexOf(_text.charAt(k)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Move past the next token, which must exist. */
+    void skip() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        _pos = _end;
+    }
+
+    /** Return the next token, which must exist. */
+    String next() {
+        skip();
+        return _text.subSequence(_start, _end).toString();
+    }
+
+    /** Return the next token, which must be a decimal integer with an
+     *  optional sign. */
+    int nextInt() {
+        skip();
+        int k = _start;
+        boolean negative = false;
+        if (_text.charAt(k) == '-' || _text.charAt(k) == '+') {
+            negative = _text.charAt(k) == '-';
+            k += 1;
+        }
+        if (k == _end) {
+            throw new InputMismatchException();
+        }
+        long value = 0;
+        for (; k < _end; k++) {
+            int digit = Character.digit(_text.charAt(k), RADIX);
+            if (digit < 0) {
+                throw new InputMismatchException();
+            }
+            value = value * RADIX + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new InputMismatchException();
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new InputMismatchException();
+        }
+        return (int) value;
+    }
+
+    /** Radix of integers. */
+    private static final int RADIX = 10;
+
+    /** The text being tokenized. */
+    private CharSequence _text;
+
+    /** Position just past the last token read or skipped. */
+    private int _pos;
+
+    /** Bounds of the next token, found by hasNext, if _pos <= _start <
+     *  _end, and otherwise of the last token read or skipped. */
+    private int _start, _end;
+}
@@ -0,0 +1,80 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.NoSuchElementException;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Tokenizer class.
+ *  @author
+ */
+public class TokenizerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void readsTokens() {
+        Tokenizer t = new Tokenizer("  *\tB Beta\n  AXLE (AB)(CD) ");
+        assertTrue(t.atStar());
+        t.skip();
+        assertEquals("B", t.next());
+        assertTrue(t.atName());
+        assertEquals("Beta", t.next());
+        assertEquals("AXLE", t.next());
+        assertTrue(t.atCycles());
+        assertFalse(t.atName());
+        t.skip();
+        assertEquals(26, t.position());
+        assertFalse(t.hasNext());
+        assertFalse(t.atCycles());
+    }
+
+    @Test
+    public void classifiesTokens() {
+        assertTrue(new Tokenizer("MQE").atType());
+        assertTrue(new Tokenizer("R").atType());
+        assertFalse(new Tokenizer("M*").atType());
+        assertFalse(new Tokenizer("Q").atType());
+        assertFalse(new Tokenizer("(A").atCycles());
+        assertFalse(new Tokenizer("(").atCycles());
+        assertTrue(new Tokenizer("(A)x(B)").atCycles());
+        assertFalse(new Tokenizer("A(B").atName());
+        assertFalse(new Tokenizer("**").atStar());
+    }
+
+    @Test
+    public void readsIntegers() {
+        Tokenizer t = new Tokenizer("5 -3 +2 2147483647 -2147483648");
+        assertEquals(5, t.nextInt());
+        assertEquals(-3, t.nextInt());
+        assertEquals(2, t.nextInt());
+        assertEquals(Integer.MAX_VALUE, t.nextInt());
+        assertEquals(Integer.MIN_VALUE, t.nextInt());
+        for (String bad : new String[] {"", "x", "-", "2147483648", "3a"}) {
+            try {
+                new Tokenizer(bad).nextInt();
+                fail("accepted " + bad);
+            } catch (NoSuchElementException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void cyclesFromRange() {
+        String line = "* B (AB) (C DE)\n(F)";
+        Permutation p = new Permutation(line, 4, line.length(), UPPER);
+        assertEquals('B', p.permute('A'));
+        assertEquals('E', p.permute('D'));
+        assertEquals('C', p.permute('E'));
+        assertEquals('F', p.permute('F'));
+        assertEquals('G', p.permute('G'));
+    }
+
+}
@@ -11,7 +11,18 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      AlphabetTest.class,
+                                      MovingRotorTest.class,
+                                      MachineTest.class,
+                                      ParallelConverterTest.class,
+                                      BombeTest.class,
+                                      HillClimberTest.class,
+                                      SweepTest.class,
+                                      BatchConverterTest.class,
+                                      LatencyHistogramTest.class,
+                                      CompiledConfigTest.class,
+                                      TokenizerTest.class,
+                                      KeystreamStoreTest.class));
     }
 
 }
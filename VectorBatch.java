@@ -0,0 +1,290 @@
+package enigma;
+
+import java.util.IdentityHashMap;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A batch of messages, each with its own machine, converted a vector
+ *  lane per message with the (incubating) Vector API.  The wiring of
+ *  every distinct MachineSpec in the batch is laid out in one table, so
+ *  that each lane finds its rotor mappings, notches and plugboard at its
+ *  own offset in it, and each rotor lookup is a single gather.  Rotor
+ *  positions are kept by slot as lanes, and all lanes step in lockstep;
+ *  as a lane's message ends, its machine is left advanced past it and
+ *  the lane takes the next message.  The machines must all have the
+ *  same numbers of slots and pawls and the same alphabet size, and must
+ *  be distinct.
+ *
+ *  This class needs the module jdk.incubator.vector, and so is only
+ *  used through BatchConverter, which falls back to converting message
+ *  by message when the module is missing.
+ *  @author Manavjot Singh
+ */
+final class VectorBatch {
+
+    /** A batch that converts MESSAGES[k] (as alphabet indices, converted
+     *  in place) with MACHINES[k] for each k. */
+    VectorBatch(Machine[] machines, int[][] messages) {
+        _machines = machines;
+        _messages = messages;
+        Machine first = machines[0];
+        _size = first.alphabet().size();
+        _numRotors = first.numRotors();
+        _boundary = _numRotors - first.numPawls();
+        _block = _size * (2 + 3 * _numRotors);
+        IdentityHashMap<MachineSpec, Integer> blocks =
+            new IdentityHashMap<>();
+        for (Machine machine : machines) {
+            blocks.putIfAbsent(machine.spec(), blocks.size() * _block);
+        }
+        _tables = new int[blocks.size() * _block];
+        for (MachineSpec spec : blocks.keySet()) {
+            layOut(spec, blocks.get(spec));
+        }
+        _bases = blocks;
+    }
+
+    /** Return the number of lanes of a batch. */
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    /** Copy the wiring of SPEC into _tables at offset BASE. */
+    private void layOut(MachineSpec spec, int base) {
+        System.arraycopy(spec.plugboard(false), 0, _tables,
+                         base + PLUG_IN * _size, _size);
+        System.arraycopy(spec.plugboard(true), 0, _tables,
+                         base + PLUG_OUT * _size, _size);
+        for (int i = 0; i < _numRotors; i++) {
+            System.arraycopy(spec.table(i, false), 0, _tables,
+                             base + forward(i), _size);
+            System.arraycopy(spec.table(i, true), 0, _tables,
+                             base + backward(i), _size);
+            if (i >= _boundary) {
+                boolean[] notches = spec.notches(i);
+                for (int p = 0; p < _size; p++) {
+                    _tables[base + notch(i) + p] = notches[p] ? 1 : 0;
+                }
+            }
+        }
+    }
+
+    /** Return the offset within a block of the forward mapping of slot
+     *  I. */
+    private int forward(int i) {
+        return (2 + i) * _size;
+    }
+
+    /** Return the offset within a block of the inverse mapping of slot
+     *  I. */
+    private int backward(int i) {
+        return (2 + _numRotors + i) * _size;
+    }
+
+    /** Return the offset within a block of the notch flags of slot I. */
+    private int notch(int i) {
+        return (2 + 2 * _numRotors + i) * _size;
+    }
+
+    /** Convert every message, leaving each machine advanced past its
+     *  message. */
+    void run() {
+        int lanes = lanes();
+        _positions = new int[_numRotors][lanes];
+        _rings = new int[_numRotors][lanes];
+        _base = new int[lanes];
+        _reflections = new int[lanes * _size];
+        _lane = new int[lanes];
+        _cursor = new int[lanes];
+        _active = new boolean[lanes];
+        _live = new int[lanes];
+        _index = new int[lanes];
+        int[] input = new int[lanes], output = new int[lanes];
+        int[] offsets = new int[lanes];
+        for (int k = 0; k < lanes; k++) {
+            offsets[k] = k * _size;
+            fill(k);
+        }
+        IntVector reflections = IntVector.fromArray(SPECIES, offsets, 0);
+        while (_busy > 0) {
+            step();
+            for (int k = 0; k < lanes; k++) {
+                input[k] = _active[k] ? _messages[_lane[k]][_cursor[k]] : 0;
+            }
+            IntVector base = IntVector.fromArray(SPECIES, _base, 0);
+            IntVector c = IntVector.fromArray(SPECIES, input, 0);
+            c = gather(_tables, base.add(PLUG_IN * _size).add(c));
+            for (int i = _numRotors - 1; i >= _boundary; i--) {
+                c = through(base.add(forward(i)), setting(i), c);
+            }
+            c = gather(_reflections, reflections.add(c));
+            for (int i = _boundary; i < _numRotors; i++) {
+                c = through(base.add(backward(i)), setting(i), c);
+            }
+            c = gather(_tables, base.add(PLUG_OUT * _size).add(c));
+            c.intoArray(output, 0);
+            for (int k = 0; k < lanes; k++) {
+                if (_active[k]) {
+                    int[] message = _messages[_lane[k]];
+                    message[_cursor[k]++] = output[k];
+                    if (_cursor[k] == message.length) {
+                        finish(k);
+                        fill(k);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Advance the positions of the lanes that have messages by one
+     *  keypress, as for Odometer.step.  Flags are kept as lanes of 0 or
+     *  1 rather than as masks, which the Vector API handles less well. */
+    private void step() {
+        IntVector base = IntVector.fromArray(SPECIES, _base, 0);
+        IntVector live = IntVector.fromArray(SPECIES, _live, 0);
+        IntVector carried = IntVector.zero(SPECIES);
+        for (int j = _boundary; j < _numRotors; j++) {
+            IntVector pos = IntVector.fromArray(SPECIES, _positions[j], 0);
+            IntVector moves = live;
+            if (j + 1 < _numRotors) {
+                IntVector next =
+                    IntVector.fromArray(SPECIES, _positions[j + 1], 0);
+                IntVector carry =
+                    gather(_tables, base.add(notch(j + 1)).add(next))
+                    .and(carried.not());
+                moves = carried.or(carry).and(live);
+                carried = carry;
+            }
+            reduce(pos.add(moves)).intoArray(_positions[j], 0);
+        }
+    }
+
+    /** Return the settings of the rotors in slot I. */
+    private IntVector setting(int i) {
+        return wrap(IntVector.fromArray(SPECIES, _positions[i], 0)
+                    .sub(IntVector.fromArray(SPECIES, _rings[i], 0)));
+    }
+
+    /** Return the result of passing C through the rotors at settings SET
+     *  whose mappings at setting 0 start at offsets TABLE in _tables. */
+    private IntVector through(IntVector table, IntVector set, IntVector c) {
+        IntVector p = reduce(c.add(set));
+        return wrap(gather(_tables, table.add(p)).sub(set));
+    }
+
+    /** Return P, whose lanes are in the range 0 .. 2 * alphabet size - 1,
+     *  modulo the alphabet size. */
+    private IntVector reduce(IntVector p) {
+        return wrap(p.sub(_size));
+    }
+
+    /** Return P, whose lanes are in the range -alphabet size .. alphabet
+     *  size - 1, modulo the alphabet size. */
+    private IntVector wrap(IntVector p) {
+        return p.add(p.lanewise(VectorOperators.ASHR, 31).and(_size));
+    }
+
+    /** Return the elements of TABLE at INDICES. */
+    private IntVector gather(int[] table, IntVector indices) {
+        indices.intoArray(_index, 0);
+        return IntVector.fromArray(SPECIES, table, 0, _index, 0);
+    }
+
+    /** Give lane K the next message that is not empty, if any, and the
+     *  settings and wiring of its machine. */
+    private void fill(int k) {
+        while (_next < _messages.length && _messages[_next].length == 0) {
+            _next += 1;
+        }
+        if (_next == _messages.length) {
+            if (_active[k]) {
+                _active[k] = false;
+                _live[k] = 0;
+                _busy -= 1;
+            }
+            return;
+        }
+        if (!_active[k]) {
+            _active[k] = true;
+            _live[k] = 1;
+            _busy += 1;
+        }
+        _lane[k] = _next;
+        _cursor[k] = 0;
+        Machine machine = _machines[_next++];
+        MachineSpec spec = machine.spec();
+        MachineState state = machine.state();
+        _base[k] = _bases.get(spec);
+        for (int i = 0; i < _numRotors; i++) {
+            _positions[i][k] = state.position(i);
+            _rings[i][k] = state.ring(i);
+        }
+        System.arraycopy(spec.reflection(state), 0, _reflections, k * _size,
+                         _size);
+    }
+
+    /** Leave the machine of lane K advanced past its message. */
+    private void finish(int k) {
+        int[] positions = _machines[_lane[k]].state().positions();
+        for (int i = _boundary; i < _numRotors; i++) {
+            positions[i] = _positions[i][k];
+        }
+    }
+
+    /** Shape of the vectors used. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+    /** Offsets, in units of the alphabet size, of the plugboard mappings
+     *  within a block. */
+    private static final int PLUG_IN = 0, PLUG_OUT = 1;
+
+    /** Machine of each message. */
+    private final Machine[] _machines;
+
+    /** The messages, converted in place. */
+    private final int[][] _messages;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of slots, and slot of the leftmost rotor under a pawl. */
+    private final int _numRotors, _boundary;
+
+    /** Length of the wiring of a spec in _tables. */
+    private final int _block;
+
+    /** Wiring of each distinct spec, a block per spec. */
+    private final int[] _tables;
+
+    /** Offset of each spec's block in _tables. */
+    private final IdentityHashMap<MachineSpec, Integer> _bases;
+
+    /** Position and ring of each slot, by lane. */
+    private int[][] _positions, _rings;
+
+    /** Offset in _tables of the block of each lane. */
+    private int[] _base;
+
+    /** Mapping of the reflector and non-moving rotors of each lane, the
+     *  alphabet size apart. */
+    private int[] _reflections;
+
+    /** Message of each lane, and the index of its next character. */
+    private int[] _lane, _cursor;
+
+    /** Which lanes have a message, as flags and as 0 or 1. */
+    private boolean[] _active;
+    private int[] _live;
+
+    /** Number of lanes that have a message. */
+    private int _busy;
+
+    /** Index of the next message to be given a lane. */
+    private int _next;
+
+    /** Indices of the current gather. */
+    private int[] _index;
+}
@@ -0,0 +1,101 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of large and non-BMP alphabets: Alphabet.toIndex, over
+ *  alphabets whose code points are consecutive (indexed densely) or
+ *  spread out (indexed by the perfect hash), and Machine.convert on
+ *  messages over them.  Alphabets start at '!' or at U+20000, the
+ *  first CJK ideograph outside the Basic Multilingual Plane, and their
+ *  tables take a byte an entry up to 256 characters, a short above.
+ *  @author Manavjot Singh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AlphabetBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "256", "1000", "4000", "20000" })
+    public int alphabetSize;
+
+    /** Code point at which the alphabet starts. */
+    @Param({ "33", "131072" })
+    public int first;
+
+    /** Distance between successive code points of the alphabet of
+     *  toIndex. */
+    @Param({ "1", "37" })
+    public int spacing;
+
+    /** Build the alphabets, the machine and the message. */
+    @Setup
+    public void setUp() {
+        int[] all = BenchMachine.alphabet(alphabetSize * spacing, first)
+            .codePoints().toArray();
+        _codePoints = new int[alphabetSize];
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < alphabetSize; i++) {
+            _codePoints[i] = all[i * spacing];
+            chars.appendCodePoint(_codePoints[i]);
+        }
+        _alphabet = new Alphabet(chars.toString());
+        BenchMachine bench =
+            new BenchMachine(alphabetSize, first, 1, PAWLS, SEED);
+        _machine = bench.machine();
+        _text = bench.message(MESSAGE_LENGTH);
+    }
+
+    /** Measure the lookup of successive characters of the alphabet. */
+    @Benchmark
+    public int toIndex() {
+        _index = _index + 1 == alphabetSize ? 0 : _index + 1;
+        return _alphabet.toIndex(_codePoints[_index]);
+    }
+
+    /** Measure the conversion of a message of MESSAGE_LENGTH characters
+     *  (with a blank after every fifth). */
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_text);
+    }
+
+    /** Number of moving rotors. */
+    private static final int PAWLS = 3;
+
+    /** Number of characters in the message. */
+    private static final int MESSAGE_LENGTH = 10000;
+
+    /** Seed of the machine's wiring and of the message. */
+    private static final long SEED = 61;
+
+    /** The alphabet of toIndex. */
+    private Alphabet _alphabet;
+
+    /** Its code points. */
+    private int[] _codePoints;
+
+    /** The machine measured. */
+    private Machine _machine;
+
+    /** The message converted. */
+    private String _text;
+
+    /** Index last looked up. */
+    private int _index;
+}
@@ -0,0 +1,73 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of BatchConverter on many short messages, each with its
+ *  own machine, with and without the Vector API.  The machines are
+ *  wired alike but set differently.
+ *  @author Manavjot Singh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class BatchBench {
+
+    /** True iff the Vector API is used. */
+    @Param({ "false", "true" })
+    public boolean vector;
+
+    /** Number of messages in a batch. */
+    @Param({ "64", "1024" })
+    public int messages;
+
+    /** Number of characters in each message. */
+    @Param({ "20", "200" })
+    public int length;
+
+    /** Build the machines and messages. */
+    @Setup
+    public void setUp() {
+        _machines = new Machine[messages];
+        _messages = new String[messages];
+        BenchMachine bench = new BenchMachine(26, 1, 3, SEED);
+        for (int k = 0; k < messages; k++) {
+            _machines[k] = bench.machine();
+            _machines[k].setRotors(bench.message(4));
+            _messages[k] = bench.message(length);
+        }
+        _converter = new BatchConverter(vector);
+    }
+
+    /** Measure the conversion of the batch. */
+    @Benchmark
+    public String[] convert() {
+        return _converter.convert(_machines, _messages);
+    }
+
+    /** Seed of the machines' wiring, settings and messages. */
+    private static final long SEED = 61;
+
+    /** The machine of each message. */
+    private Machine[] _machines;
+
+    /** The messages. */
+    private String[] _messages;
+
+    /** The converter measured. */
+    private BatchConverter _converter;
+}
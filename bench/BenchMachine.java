@@ -0,0 +1,207 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/** A randomly wired machine for the benchmarks, available both as a
+ *  Machine and as the text of a configuration file and setting line.
+ *  Everything is derived from a seed, so that every run measures the
+ *  same work.  The alphabet is a run of code points from a given first
+ *  one, which may lie outside the Basic Multilingual Plane.
+ *  @author Manavjot Singh
+ */
+final class BenchMachine {
+
+    /** A machine over an alphabet of SIZE characters with a reflector,
+     *  FIXED non-moving rotors and PAWLS moving rotors, wired from SEED. */
+    BenchMachine(int size, int fixed, int pawls, long seed) {
+        this(size, '!', fixed, pawls, seed);
+    }
+
+    /** A machine as for BenchMachine(SIZE, FIXED, PAWLS, SEED) whose
+     *  alphabet starts at code point FIRST. */
+    BenchMachine(int size, int first, int fixed, int pawls, long seed) {
+        _random = new Random(seed);
+        _alphabet = alphabet(size, first);
+        _codePoints = _alphabet.codePoints().toArray();
+        _fixed = fixed;
+        _pawls = pawls;
+        _reflector = pairs(_codePoints.length);
+        _cycles = new String[fixed + pawls];
+        _notches = new String[pawls];
+        for (int i = 0; i < _cycles.length; i++) {
+            _cycles[i] = cycles();
+        }
+        for (int i = 0; i < pawls; i++) {
+            _notches[i] = new String(Character.toChars(randomChar()));
+        }
+        _plugboard = pairs(_codePoints.length / 2);
+        StringBuilder setting = new StringBuilder();
+        for (int i = 0; i < fixed + pawls; i++) {
+            setting.appendCodePoint(randomChar());
+        }
+        _setting = setting.toString();
+    }
+
+    /** Return an alphabet of SIZE printable characters, none of which is
+     *  special in configuration files. */
+    static String alphabet(int size) {
+        return alphabet(size, '!');
+    }
+
+    /** Return an alphabet of SIZE characters as for alphabet(SIZE), of
+     *  the first such code points from FIRST on. */
+    static String alphabet(int size, int first) {
+        StringBuilder result = new StringBuilder();
+        for (int c = first, n = 0; n < size; c++) {
+            if (c != '(' && c != ')' && c != '*'
+                && Character.getType(c) != Character.SURROGATE
+                && !Character.isWhitespace(c) && !Character.isISOControl(c)
+                && !Character.isSpaceChar(c)) {
+                result.appendCodePoint(c);
+                n += 1;
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return my alphabet. */
+    String alphabet() {
+        return _alphabet;
+    }
+
+    /** Return a new Machine with my rotors inserted and set and my
+     *  plugboard in place. */
+    Machine machine() {
+        Alphabet alpha = new Alphabet(_alphabet);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation(_reflector, alpha)));
+        for (int i = 0; i < _fixed; i++) {
+            rotors.add(new FixedRotor("F" + i,
+                                      new Permutation(_cycles[i], alpha)));
+        }
+        for (int i = 0; i < _pawls; i++) {
+            rotors.add(new MovingRotor("M" + i,
+                new Permutation(_cycles[_fixed + i], alpha), _notches[i]));
+        }
+        Machine result = new Machine(alpha, _fixed + _pawls + 1, _pawls,
+                                     rotors);
+        String[] names = new String[rotors.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = rotors.get(i).name();
+        }
+        result.insertRotors(names);
+        result.setRotors(_setting);
+        result.setPlugboard(new Permutation(_plugboard, alpha));
+        return result;
+    }
+
+    /** Return the text of a configuration file describing my rotors. */
+    String config() {
+        StringBuilder result = new StringBuilder();
+        result.append(_alphabet).append('\n');
+        result.append(_fixed + _pawls + 1).append(' ').append(_pawls)
+            .append('\n');
+        result.append("R R ").append(_reflector).append('\n');
+        for (int i = 0; i < _fixed; i++) {
+            result.append("F").append(i).append(" N ").append(_cycles[i])
+                .append('\n');
+        }
+        for (int i = 0; i < _pawls; i++) {
+            result.append("M").append(i).append(" M").append(_notches[i])
+                .append(' ').append(_cycles[_fixed + i]).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return a setting line that sets up the same machine as machine(). */
+    String settingLine() {
+        StringBuilder result = new StringBuilder("* R");
+        for (int i = 0; i < _fixed; i++) {
+            result.append(" F").append(i);
+        }
+        for (int i = 0; i < _pawls; i++) {
+            result.append(" M").append(i);
+        }
+        return result.append(' ').append(_setting).append(' ')
+            .append(_plugboard).toString();
+    }
+
+    /** Return a message of LENGTH characters of my alphabet, with a blank
+     *  after every fifth, as Main would print it. */
+    String message(int length) {
+        StringBuilder result = new StringBuilder(length + length / 5);
+        for (int i = 0; i < length; i++) {
+            if (i > 0 && i % 5 == 0) {
+                result.append(' ');
+            }
+            result.appendCodePoint(randomChar());
+        }
+        return result.toString();
+    }
+
+    /** Return the code point of a random character of my alphabet. */
+    private int randomChar() {
+        return _codePoints[_random.nextInt(_codePoints.length)];
+    }
+
+    /** Return the code points of my alphabet in a random order. */
+    private int[] shuffled() {
+        int[] result = _codePoints.clone();
+        for (int i = result.length - 1; i > 0; i--) {
+            int j = _random.nextInt(i + 1);
+            int c = result[i];
+            result[i] = result[j];
+            result[j] = c;
+        }
+        return result;
+    }
+
+    /** Return N disjoint random transpositions, in cycle notation. */
+    private String pairs(int n) {
+        int[] chars = shuffled();
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i + 1 < chars.length && i < 2 * n; i += 2) {
+            result.append('(').appendCodePoint(chars[i])
+                .appendCodePoint(chars[i + 1]).append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return a random permutation of my alphabet, in cycle notation. */
+    private String cycles() {
+        int[] chars = shuffled();
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < chars.length;) {
+            int len = 1 + _random.nextInt(chars.length - i);
+            result.append('(').append(new String(chars, i, len)).append(')');
+            i += len;
+        }
+        return result.toString();
+    }
+
+    /** Source of all my random choices. */
+    private final Random _random;
+
+    /** My alphabet. */
+    private final String _alphabet;
+
+    /** The code points of my alphabet. */
+    private final int[] _codePoints;
+
+    /** Numbers of non-moving and moving rotors. */
+    private final int _fixed, _pawls;
+
+    /** Cycles of the reflector and the plugboard. */
+    private final String _reflector, _plugboard;
+
+    /** Cycles of the non-moving rotors, followed by those of the moving
+     *  rotors. */
+    private final String[] _cycles;
+
+    /** Notches of the moving rotors. */
+    private final String[] _notches;
+
+    /** Initial settings of all but the reflector. */
+    private final String _setting;
+}
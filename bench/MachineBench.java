@@ -0,0 +1,129 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Machine.convert on single characters and on messages
+ *  of various lengths.  The machine has a reflector, FIXED non-moving
+ *  rotors and PAWLS moving rotors, so 1 + FIXED + PAWLS slots in all.
+ *  Message lengths are parameters of Message, so that they multiply
+ *  only the runs of convertString.
+ *  @author Manavjot Singh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MachineBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "200" })
+    public int alphabetSize;
+
+    /** Number of non-moving rotors, not counting the reflector. */
+    @Param({ "1", "3" })
+    public int fixed;
+
+    /** Number of pawls, and so of moving rotors. */
+    @Param({ "1", "3", "5" })
+    public int pawls;
+
+    /** A message for convertString. */
+    @State(Scope.Thread)
+    public static class Message {
+
+        /** Number of characters in the message. */
+        @Param({ "10", "1000", "100000", "10000000" })
+        public int length;
+
+        /** Generate the message over the alphabet of MACHINE. */
+        @Setup
+        public void setUp(MachineBench machine) {
+            _text = machine._bench.message(length);
+        }
+
+        /** The message. */
+        private String _text;
+    }
+
+    /** Build the machine. */
+    @Setup
+    public void setUp() {
+        _bench = new BenchMachine(alphabetSize, fixed, pawls, SEED);
+        _machine = _bench.machine();
+        _spec = _machine.spec();
+        _state = _machine.state();
+        _engine = EngineCompiler.compile(_spec);
+    }
+
+    /** Measure the conversion of one character by index. */
+    @Benchmark
+    public int convertIndex() {
+        _index = _index + 1 == alphabetSize ? 0 : _index + 1;
+        return _machine.convert(_index);
+    }
+
+    /** Measure the conversion of one character by index through the
+     *  spec's own tables, as before it is compiled. */
+    @Benchmark
+    public int convertInterpreted() {
+        _index = _index + 1 == alphabetSize ? 0 : _index + 1;
+        _spec.step(_state);
+        return _spec.map(_state, _index);
+    }
+
+    /** Measure the conversion of one character by index through an
+     *  Engine compiled for the spec. */
+    @Benchmark
+    public int convertCompiled() {
+        _index = _index + 1 == alphabetSize ? 0 : _index + 1;
+        return _engine.convert(_state.positions(), _state.rings(),
+                               _spec.reflection(_state), _index);
+    }
+
+    /** Measure the stepping of the rotors for one keypress alone. */
+    @Benchmark
+    public int step() {
+        _spec.step(_state);
+        return _state.position(_state.numRotors() - 1);
+    }
+
+    /** Measure the conversion of the whole of MSG (which has a blank
+     *  after every fifth character). */
+    @Benchmark
+    public String convertString(Message msg) {
+        return _machine.convert(msg._text);
+    }
+
+    /** Seed of the machine's wiring and of the message. */
+    private static final long SEED = 61;
+
+    /** Description of the machine. */
+    private BenchMachine _bench;
+
+    /** The machine measured. */
+    private Machine _machine;
+
+    /** Its wiring and settings. */
+    private MachineSpec _spec;
+    private MachineState _state;
+
+    /** The engine compiled for _spec. */
+    private Engine _engine;
+
+    /** Index last converted. */
+    private int _index;
+}
@@ -0,0 +1,100 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Main from end to end, on generated configuration and
+ *  input files, with output to a file.  Run with
+ *  -jvmArgs -Denigma.mmap=true to measure the memory-mapped mode.
+ *  @author Manavjot Singh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MainBench {
+
+    /** Number of characters in the alphabet, kept within printable ASCII
+     *  so that the files can be written in any default charset. */
+    @Param({ "26", "64" })
+    public int alphabetSize;
+
+    /** Number of non-moving rotors, not counting the reflector. */
+    @Param({ "1" })
+    public int fixed;
+
+    /** Number of pawls, and so of moving rotors. */
+    @Param({ "3" })
+    public int pawls;
+
+    /** Total number of message characters in the input. */
+    @Param({ "10000", "1000000", "10000000" })
+    public int length;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        BenchMachine bench =
+            new BenchMachine(alphabetSize, fixed, pawls, SEED);
+        _dir = Files.createTempDirectory("enigma-bench");
+        _config = _dir.resolve("bench.conf");
+        _input = _dir.resolve("bench.in");
+        _output = _dir.resolve("bench.out");
+        Files.writeString(_config, bench.config(), Charset.defaultCharset());
+        try (Writer out =
+             Files.newBufferedWriter(_input, Charset.defaultCharset())) {
+            out.write(bench.settingLine());
+            out.write('\n');
+            for (int n = 0; n < length; n += LINE) {
+                out.write(bench.message(Math.min(LINE, length - n)));
+                out.write('\n');
+            }
+        }
+    }
+
+    /** Remove the files. */
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(_config);
+        Files.deleteIfExists(_input);
+        Files.deleteIfExists(_output);
+        Files.deleteIfExists(_dir);
+    }
+
+    /** Measure a complete run of Main. */
+    @Benchmark
+    public void main() {
+        Main.main(_config.toString(), _input.toString(), _output.toString());
+    }
+
+    /** Seed of the machine's wiring and of the messages. */
+    private static final long SEED = 61;
+
+    /** Number of message characters per input line. */
+    private static final int LINE = 60;
+
+    /** Directory holding the files. */
+    private Path _dir;
+
+    /** Configuration, input and output files. */
+    private Path _config, _input, _output;
+}
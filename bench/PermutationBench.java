@@ -0,0 +1,77 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Permutation.permute and Permutation.invert.
+ *  @author Manavjot Singh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "200" })
+    public int alphabetSize;
+
+    /** Build a random permutation over the alphabet. */
+    @Setup
+    public void setUp() {
+        _perm = randomPermutation();
+    }
+
+    /** Return a random permutation of an alphabet of alphabetSize
+     *  characters. */
+    private Permutation randomPermutation() {
+        String alpha = BenchMachine.alphabet(alphabetSize);
+        char[] chars = alpha.toCharArray();
+        Random random = new Random(SEED);
+        for (int i = chars.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            char c = chars[i];
+            chars[i] = chars[j];
+            chars[j] = c;
+        }
+        return new Permutation("(" + new String(chars) + ")",
+                               new Alphabet(alpha));
+    }
+
+    /** Measure permute over successive indices. */
+    @Benchmark
+    public int permute() {
+        _index = _index + 1 == alphabetSize ? 0 : _index + 1;
+        return _perm.permute(_index);
+    }
+
+    /** Measure invert over successive indices. */
+    @Benchmark
+    public int invert() {
+        _index = _index + 1 == alphabetSize ? 0 : _index + 1;
+        return _perm.invert(_index);
+    }
+
+    /** Seed of the permutation. */
+    private static final long SEED = 61;
+
+    /** The permutation measured. */
+    private Permutation _perm;
+
+    /** Index last converted. */
+    private int _index;
+}
@@ -0,0 +1,74 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Rotor.convertForward, Rotor.convertBackward and
+ *  MovingRotor.advance.
+ *  @author Manavjot Singh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotorBench {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "200" })
+    public int alphabetSize;
+
+    /** Build a randomly wired moving rotor at a random setting. */
+    @Setup
+    public void setUp() {
+        String config = new BenchMachine(alphabetSize, 0, 1, SEED).config();
+        String[] lines = config.split("\n");
+        String[] rotor = lines[lines.length - 1].split(" ");
+        Alphabet alpha = new Alphabet(lines[0]);
+        _rotor = new MovingRotor(rotor[0], new Permutation(rotor[2], alpha),
+                                 rotor[1].substring(1));
+        _rotor.set(alphabetSize / 3);
+    }
+
+    /** Measure convertForward over successive indices. */
+    @Benchmark
+    public int convertForward() {
+        _index = _index + 1 == alphabetSize ? 0 : _index + 1;
+        return _rotor.convertForward(_index);
+    }
+
+    /** Measure convertBackward over successive indices. */
+    @Benchmark
+    public int convertBackward() {
+        _index = _index + 1 == alphabetSize ? 0 : _index + 1;
+        return _rotor.convertBackward(_index);
+    }
+
+    /** Measure advance, returning the new setting. */
+    @Benchmark
+    public int advance() {
+        _rotor.advance();
+        return _rotor.setting();
+    }
+
+    /** Seed of the rotor's wiring. */
+    private static final long SEED = 61;
+
+    /** The rotor measured. */
+    private MovingRotor _rotor;
+
+    /** Index last converted. */
+    private int _index;
+}